@@ -0,0 +1,122 @@
+package application;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+//selects the samples of a series sorted by x that are needed to draw it at a given width in pixels
+//the visible part is found by binary search, so the work depends on the visible samples and not on the series length
+class Decimator {
+	
+	//x values must be in ascending order, NaN is not sorted
+	static boolean isSorted(double[] x) {
+		for (int i = 1; i < x.length; i++) {
+			if ((x[i] >= x[i - 1]) == false) return false;
+		}
+		return x.length > 0 && Double.isNaN(x[0]) == false;
+	}
+	
+	//index of the first sample from start to end with x not less than value
+	static int lowerIndex(double[] x, int start, int end, double value) {
+		int lo = start, hi = end;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (x[mid] < value) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo;
+	}
+	
+	//index of the first sample from start to end with x greater than value
+	static int upperIndex(double[] x, int start, int end, double value) {
+		int lo = start, hi = end;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (x[mid] <= value) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo;
+	}
+	
+	//ascending indices of the samples from start to end to show for the range lo to hi on the given number of columns
+	//one sample on each side outside of the range is kept so that the line reaches the border of the plot area
+	static int[] decimate(InteractiveLineChart.Decimation mode, double[] x, double[] y, int start, int end, double lo, double hi, int columns) {
+		int from = Math.max(lowerIndex(x, start, end, lo) - 1, start);
+		int to = Math.min(upperIndex(x, start, end, hi) + 1, end);
+		if (to <= from) return new int[0];
+		return switch (mode) {
+			case M4 -> to - from <= columns * 4 || hi <= lo ? IntStream.range(from, to).toArray() : m4(x, y, from, to, lo, hi, columns);
+			case LTTB -> to - from <= columns * 2 ? IntStream.range(from, to).toArray() : lttb(x, y, from, to, columns * 2);
+			case NONE -> IntStream.range(from, to).toArray();
+		};
+	}
+	
+	//first, minimum, maximum and last sample of each pixel column, samples outside of the range have their own column
+	static int[] m4(double[] x, double[] y, int from, int to, double lo, double hi, int columns) {
+		int[] out = new int[(columns + 2) * 4];
+		int count = 0;
+		double scale = columns / (hi - lo);
+		int column = Integer.MIN_VALUE, first = from, min = from, max = from, last = from;
+		for (int i = from; i < to; i++) {
+			int c = (int) Math.max(Math.min(Math.floor((x[i] - lo) * scale), columns), -1);
+			if (c != column) {
+				if (column != Integer.MIN_VALUE) count = addColumn(out, count, first, min, max, last);
+				column = c;
+				first = min = max = last = i;
+				
+			} else {
+				last = i;
+				if (y[i] < y[min]) min = i;
+				if (y[i] > y[max]) max = i;
+			}
+		}
+		count = addColumn(out, count, first, min, max, last);
+		return Arrays.copyOf(out, count);
+	}
+	
+	//the four samples of a column in ascending order without duplicates
+	private static int addColumn(int[] out, int count, int first, int min, int max, int last) {
+		out[count++] = first;
+		int a = Math.min(min, max), b = Math.max(min, max);
+		if (a != first && a != last) out[count++] = a;
+		if (b != first && b != last && b != a) out[count++] = b;
+		if (last != first) out[count++] = last;
+		return count;
+	}
+	
+	//largest triangle three buckets, keeps first and last sample and from each bucket in between the sample 
+	//that spans the largest triangle with the previously selected sample and the average of the next bucket
+	static int[] lttb(double[] x, double[] y, int from, int to, int threshold) {
+		int n = to - from;
+		int[] out = new int[threshold];
+		double every = (double) (n - 2) / (threshold - 2);
+		int a = from, count = 0;
+		out[count++] = a;
+		for (int i = 0; i < threshold - 2; i++) {
+			int avgStart = from + (int) ((i + 1) * every) + 1;
+			int avgEnd = Math.min(from + (int) ((i + 2) * every) + 1, to);
+			double avgX = 0, avgY = 0;
+			if (avgStart >= avgEnd) avgStart = avgEnd - 1;
+			for (int j = avgStart; j < avgEnd; j++) {
+				avgX += x[j];
+				avgY += y[j];
+			}
+			avgX /= avgEnd - avgStart;
+			avgY /= avgEnd - avgStart;
+			
+			int rangeStart = from + (int) (i * every) + 1;
+			int rangeEnd = from + (int) ((i + 1) * every) + 1;
+			double maxArea = -1;
+			int next = rangeStart;
+			for (int j = rangeStart; j < rangeEnd; j++) {
+				double area = Math.abs((x[a] - avgX) * (y[j] - y[a]) - (x[a] - x[j]) * (avgY - y[a]));
+				if (area > maxArea) {
+					maxArea = area;
+					next = j;
+				}
+			}
+			out[count++] = a = next;
+		}
+		out[count++] = to - 1;
+		return out;
+	}
+}
@@ -1,12 +1,21 @@
 package application;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Random;
 import java.util.stream.DoubleStream;
 import java.util.stream.IntStream;
 
 import application.InteractiveLineChart.DataSymbol;
+import application.InteractiveLineChart.Decimation;
 
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.event.ActionEvent;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -20,14 +29,18 @@ import javafx.stage.Stage;
 
 public class Demo extends Application {
 
+	//producer of the streaming demo, it stops when another demo is loaded
+	private volatile Thread stream;
+	
 	@Override
 	public void start(Stage stage) throws Exception {
 		//demo ui
-		Button[] buttons = new Button[6];
-		for (int i = 0; i < 6; i++) {
+		Button[] buttons = new Button[10];
+		for (int i = 0; i < 10; i++) {
 			buttons[i] = new Button(Integer.toString(i + 1));
 			buttons[i].setStyle("-fx-font-size: 18");
-			buttons[i].setPrefWidth(30);
+			buttons[i].setPrefWidth(40);
+			buttons[i].addEventHandler(ActionEvent.ACTION, _ -> stream = null);
 		}
 		
 		Label label = new Label("Click buttons to load example data\nright click on chart to see available settings" + 
@@ -167,6 +180,147 @@ public class Demo extends Application {
 				.setName("Heart")
 				.plot();
 		});
+		
+		//DEMO 7 -----------------------------
+		buttons[6].setOnAction(_ -> {
+			chart.reset();
+			
+			//five million samples of a noisy trace, only the samples needed for the visible range are shown
+			Random random = new Random(0);
+			double[] trace = new double[5_000_000];
+			for (int i = 0; i < trace.length; i++) trace[i] = Math.sin(i * 2e-5) + Math.sin(i * 3e-3) * 0.2 + random.nextGaussian() * 0.05;
+			chart.seriesBuilder()
+				.setY(trace)
+				.setColor(Color.STEELBLUE)
+				.setSymbol(DataSymbol.NONE)
+				.setName("sensor trace M4")
+				.plot();
+			
+			double[] shifted = DoubleStream.of(trace).map(v -> v + 3).toArray();
+			chart.seriesBuilder()
+				.setY(shifted)
+				.setColor(Color.DARKORANGE)
+				.setSymbol(DataSymbol.NONE)
+				.setDecimation(Decimation.LTTB)
+				.setName("sensor trace LTTB")
+				.plot();
+		});
+		
+		//DEMO 8 -----------------------------
+		buttons[7].setOnAction(_ -> {
+			chart.reset();
+			chart.setCanvasRendering(true);
+			
+			//one million samples of a curve with unsorted x, all of them are drawn onto the canvas
+			int n = 1_000_000;
+			double[] x = new double[n], y = new double[n];
+			for (int i = 0; i < n; i++) {
+				double t = 2 * Math.PI * i / n;
+				x[i] = Math.sin(3 * t) * (1 + 0.1 * Math.sin(400 * t));
+				y[i] = Math.sin(4 * t) * (1 + 0.1 * Math.cos(400 * t));
+			}
+			chart.seriesBuilder()
+				.setX(x)
+				.setY(y)
+				.setColor(Color.CRIMSON)
+				.setSymbol(DataSymbol.CIRCLE)
+				.setName("lissajous")
+				.plot();
+			
+			chart.seriesBuilder()
+				.setDiscreteFunction(-1, 1, 200, v -> v * v * v)
+				.setColor(Color.TEAL)
+				.setSymbol(DataSymbol.DIAMOND)
+				.setSymbolFilled(true)
+				.setLineWidth(2)
+				.setName("cubic")
+				.plot();
+		});
+		
+		//DEMO 9 -----------------------------
+		buttons[8].setOnAction(_ -> {
+			chart.reset();
+			
+			//file of twenty million floats written once, mapping and the pyramid run in the background
+			Thread.ofPlatform().daemon().start(() -> {
+				try {
+					Path file = Path.of(System.getProperty("java.io.tmpdir"), "DataPlotterDemo.f32");
+					if (Files.exists(file) == false) {
+						int n = 20_000_000;
+						ByteBuffer bb = ByteBuffer.allocate(n * 4).order(ByteOrder.LITTLE_ENDIAN);
+						Random random = new Random(0);
+						for (int i = 0; i < n; i++) bb.putFloat((float) (Math.sin(i * 1e-6) + Math.sin(i * 1e-3) * 0.3 + random.nextGaussian() * 0.05));
+						Files.write(file, bb.array());
+					}
+					MappedSamples samples = MappedSamples.open(file, MappedSamples.SampleType.FLOAT, 0, 1e-3);
+					Platform.runLater(() -> {
+						chart.setCanvasRendering(true);
+						chart.seriesBuilder()
+							.setY(samples)
+							.setColor(Color.SEAGREEN)
+							.setSymbol(DataSymbol.NONE)
+							.setName("mapped file")
+							.plot();
+					});
+					
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			});
+		});
+		
+		//DEMO 10 -----------------------------
+		buttons[9].setOnAction(_ -> {
+			chart.reset();
+			
+			//two channels sampled at 10 kHz, the last minute is kept, the x axis follows the newest 5 seconds
+			StreamingSamples signal = new StreamingSamples(600_000);
+			StreamingSamples average = new StreamingSamples(600_000);
+			chart.setCanvasRendering(true);
+			chart.seriesBuilder()
+				.setY(signal)
+				.setColor(Color.STEELBLUE)
+				.setSymbol(DataSymbol.NONE)
+				.setName("signal")
+				.plot();
+			chart.seriesBuilder()
+				.setY(average)
+				.setColor(Color.ORANGERED)
+				.setLineWidth(2)
+				.setSymbol(DataSymbol.NONE)
+				.setName("moving average")
+				.plot();
+			chart.setSlidingWindow(5);
+			
+			//the producer appends a batch every millisecond independent of the frame rate of the chart
+			Thread producer = Thread.ofPlatform().daemon().unstarted(() -> {
+				double rate = 10_000, avg = 0;
+				double[] x = new double[100], y = new double[100], a = new double[100];
+				Random random = new Random(0);
+				long t0 = System.nanoTime(), n = 0;
+				while (stream == Thread.currentThread()) {
+					long due = (long) ((System.nanoTime() - t0) * 1e-9 * rate);
+					while (n < due) {
+						int k = (int) Math.min(due - n, x.length);
+						for (int i = 0; i < k; i++, n++) {
+							x[i] = n / rate;
+							y[i] = Math.sin(x[i] * 2) + Math.sin(x[i] * 37) * 0.2 + random.nextGaussian() * 0.1;
+							avg += (y[i] - avg) * 0.002;
+							a[i] = avg;
+						}
+						signal.append(x, y, k);
+						average.append(x, a, k);
+					}
+					try {
+						Thread.sleep(1);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			});
+			stream = producer;
+			producer.start();
+		});
 	}
 
 	public static void main(String[] args) {
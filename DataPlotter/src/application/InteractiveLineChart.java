@@ -5,20 +5,26 @@ import java.util.function.DoubleUnaryOperator;
 import java.util.function.ToDoubleFunction;
 import java.util.stream.*;
 
+import javafx.animation.AnimationTimer;
 import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.geometry.Dimension2D;
 import javafx.geometry.Side;
 import javafx.scene.Node;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.chart.*;
 import javafx.scene.control.*;
+import javafx.scene.image.Image;
 import javafx.scene.input.MouseButton;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.Region;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
 import javafx.scene.shape.Line;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.shape.Shape;
@@ -31,6 +37,17 @@ public class InteractiveLineChart extends LineChart <Number, Number> {
 	private static final double ZOOM_FACTOR = 1.1;
 	private static final double LEGEND_LINE_LENGTH = 10.0;
 	private Map <Node, Boolean> legendEntryMap = new HashMap<>();
+	private List <DecimatedSeries> decimatedSeries = new ArrayList<>();
+	private boolean isDecimationValid = true;
+	private static final int DEFAULT_COLUMNS = 1000;		//pixel columns assumed before the first layout
+	
+	//all series plotted with canvas rendering are drawn onto one canvas, their chart series have no data items
+	private final Canvas canvas = new Canvas();
+	private List <CanvasSeries> canvasSeries = new ArrayList<>();
+	private boolean isCanvasRendering = false;
+	private boolean isCanvasValid = true;
+	private static final int POLYLINE_CHUNK = 8192;		//pixel positions stroked at once
+	private final double[] polylineX = new double[POLYLINE_CHUNK], polylineY = new double[POLYLINE_CHUNK];
 	
 	private final CustomNumberAxis xAxis, yAxis;
 	
@@ -39,6 +56,16 @@ public class InteractiveLineChart extends LineChart <Number, Number> {
 	private final CheckMenuItem menuSymbols = new CheckMenuItem("Show Symbols");
 	private final CheckMenuItem menuXAuto = new CheckMenuItem("X Axis Autorange");
 	private final CheckMenuItem menuYAuto = new CheckMenuItem("Y Axis Autorange");
+	private final CheckMenuItem menuSliding = new CheckMenuItem("X Axis Sliding Window");
+	
+	//streaming series take over new samples once per pulse, the sliding window keeps the newest samples in view
+	private double slidingWindow = 0.0;
+	private final AnimationTimer streamTimer = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			pullStreams();
+		}
+	};
 	
 	//the one and only public constructor
 	public InteractiveLineChart() {
@@ -63,6 +90,19 @@ public class InteractiveLineChart extends LineChart <Number, Number> {
 		
 		legendSideProperty().addListener(_ -> updateLegend());
 		
+		//decimated series follow the visible range and width of the x axis
+		Stream.of(xAxis.lowerBoundProperty(), xAxis.upperBoundProperty(), xAxis.widthProperty(), xAxis.autoRangingProperty())
+			.forEach(property -> property.addListener(_ -> invalidateDecimation()));
+		
+		//canvas is drawn again when any axis or the symbol setting changes
+		canvas.setMouseTransparent(true);
+		canvas.setManaged(false);
+		getPlotChildren().add(canvas);
+		Stream.of(xAxis.lowerBoundProperty(), xAxis.upperBoundProperty(), xAxis.widthProperty(), xAxis.autoRangingProperty(),
+				yAxis.lowerBoundProperty(), yAxis.upperBoundProperty(), yAxis.heightProperty(), yAxis.autoRangingProperty(),
+				menuSymbols.selectedProperty())
+			.forEach(property -> property.addListener(_ -> invalidateCanvas()));
+		
 		//put a rectangle on top of the data area because gridlines and series will catch mouse input otherwise
 		Region region = (Region) lookup(".chart-plot-background");
 		Rectangle plotArea = new Rectangle();
@@ -87,12 +127,14 @@ public class InteractiveLineChart extends LineChart <Number, Number> {
 		}));
 		plotArea.setOnMouseDragged(mouseEvent -> {
 			if (isPanning) {
+				menuSliding.setSelected(false);
 				xAxis.pan(mouseEvent.getX(), xm, xLo, xHi);
 				yAxis.pan(mouseEvent.getY(), ym, yLo, yHi);
 			}
 		});
 		xAxis.setOnMouseDragged(mouseEvent -> {
 			if (isPanning) {
+				menuSliding.setSelected(false);
 				xAxis.pan(mouseEvent.getX(), xm, xLo, xHi);
 			}
 		});
@@ -107,12 +149,14 @@ public class InteractiveLineChart extends LineChart <Number, Number> {
 		
 		plotArea.setOnScroll(scrollEvent -> {
 			double f = scrollEvent.getDeltaY() < 0 ? ZOOM_FACTOR : 1 / ZOOM_FACTOR;
+			menuSliding.setSelected(false);
 			xAxis.zoom(scrollEvent.getX(), f);
 			yAxis.zoom(scrollEvent.getY(), f);
 		});
 		xAxis.setOnScroll(scrollEvent -> {
 			if (scrollEvent.getX() > 0 && scrollEvent.getX() < xAxis.getWidth()) {
 				double f = scrollEvent.getDeltaY() < 0 ? ZOOM_FACTOR : 1 / ZOOM_FACTOR;
+				menuSliding.setSelected(false);
 				xAxis.zoom(scrollEvent.getX(), f);
 			}
 		});
@@ -163,7 +207,7 @@ public class InteractiveLineChart extends LineChart <Number, Number> {
 		});
 		legendBottom.setSelected(true);
 		
-		ContextMenu cm = new ContextMenu(menuSide, menuEqual, new SeparatorMenuItem(), menuGrid, menuLegend, menuSymbols, menuXAuto, menuYAuto);
+		ContextMenu cm = new ContextMenu(menuSide, menuEqual, new SeparatorMenuItem(), menuGrid, menuLegend, menuSymbols, menuXAuto, menuYAuto, menuSliding);
 		
 		//context menu actions
 		menuGrid.selectedProperty().bindBidirectional(horizontalGridLinesVisibleProperty());
@@ -171,6 +215,10 @@ public class InteractiveLineChart extends LineChart <Number, Number> {
 		menuLegend.selectedProperty().bindBidirectional(legendVisibleProperty());
 		menuXAuto.selectedProperty().bindBidirectional(xAxis.autoRangingProperty());
 		menuYAuto.selectedProperty().bindBidirectional(yAxis.autoRangingProperty());
+		menuSliding.setDisable(true);
+		xAxis.autoRangingProperty().addListener((_, _, isAuto) -> {
+			if (isAuto) menuSliding.setSelected(false);
+		});
 		
 		//context menu activate
 		plotArea.setOnContextMenuRequested(ev -> cm.show(plotArea, ev.getScreenX(), ev.getScreenY()));
@@ -195,9 +243,34 @@ public class InteractiveLineChart extends LineChart <Number, Number> {
 		legendEntryMap.put(seriesNode, hasLegendEntry);
 	}
 	
+	//x axis follows the newest sample of streaming series and shows the given width of x before it, 0 turns it off
+	//panning or zooming the x axis and x autoranging stop following, it can be started again in the context menu
+	public void setSlidingWindow(double width) {
+		slidingWindow = width > 0 ? width : 0.0;
+		menuSliding.setDisable(slidingWindow == 0.0);
+		menuSliding.setSelected(slidingWindow > 0.0);
+	}
+	
+	public double getSlidingWindow() {
+		return slidingWindow;
+	}
+	
+	//series plotted after this call are drawn onto a single canvas instead of a path and a node per data point
+	public void setCanvasRendering(boolean isCanvasRendering) {
+		this.isCanvasRendering = isCanvasRendering;
+	}
+	
+	public boolean isCanvasRendering() {
+		return isCanvasRendering;
+	}
+	
 	//clear chart and set default properties
 	public void reset() {
 		getData().clear();
+		decimatedSeries.clear();
+		canvasSeries.clear();
+		isCanvasRendering = false;
+		setSlidingWindow(0.0);
 		menuXAuto.setSelected(true);
 		menuYAuto.setSelected(true);
 	}
@@ -205,6 +278,119 @@ public class InteractiveLineChart extends LineChart <Number, Number> {
 	//clear chart
 	public void clear() {
 		getData().clear();
+		decimatedSeries.clear();
+		canvasSeries.clear();
+	}
+	
+	//data of decimated series is brought up to date before the chart computes axis ranges and positions
+	//canvas series have no data items, their visible samples change the axis ranges directly
+	@Override
+	protected void layoutChildren() {
+		if (isDecimationValid == false) updateDecimation();
+		if (isCanvasValid == false && canvasSeries.isEmpty() == false) updateAxisRange();
+		super.layoutChildren();
+	}
+	
+	//same as in LineChart with the extent of the visible samples of canvas series added
+	@Override
+	protected void updateAxisRange() {
+		canvasSeries.removeIf(cs -> getData().contains(cs.series) == false);
+		if (canvasSeries.isEmpty()) {
+			super.updateAxisRange();
+			return;
+		}
+		List <Number> xData = xAxis.isAutoRanging() ? new ArrayList<>() : null;
+		List <Number> yData = yAxis.isAutoRanging() ? new ArrayList<>() : null;
+		for (Series <Number, Number> series : getData()) {
+			for (Data <Number, Number> data : series.getData()) {
+				if (xData != null) xData.add(data.getXValue());
+				if (yData != null) yData.add(data.getYValue());
+			}
+		}
+		for (CanvasSeries cs : canvasSeries) {
+			cs.prepare();
+			if (cs.count > 0 && xData != null) Collections.addAll(xData, cs.minX, cs.maxX);
+			if (cs.count > 0 && yData != null) Collections.addAll(yData, cs.minY, cs.maxY);
+		}
+		if (xData != null && xData.isEmpty() == false) xAxis.invalidateRange(xData);
+		if (yData != null && yData.isEmpty() == false) yAxis.invalidateRange(yData);
+	}
+	
+	@Override
+	protected void layoutPlotChildren() {
+		super.layoutPlotChildren();
+		drawCanvas();
+	}
+	
+	private void invalidateCanvas() {
+		if (isCanvasValid && canvasSeries.isEmpty() == false) {
+			isCanvasValid = false;
+			requestLayout();
+		}
+	}
+	
+	//draw all canvas series, positions are computed from the axes directly instead of calling the axes for every sample
+	private void drawCanvas() {
+		isCanvasValid = true;
+		double w = Math.max(xAxis.getWidth(), 0), h = Math.max(yAxis.getHeight(), 0);
+		canvas.setWidth(w);
+		canvas.setHeight(h);
+		GraphicsContext gc = canvas.getGraphicsContext2D();
+		gc.clearRect(0, 0, w, h);
+		if (canvasSeries.isEmpty()) return;
+		
+		double x0 = xAxis.getLowerBound(), px0 = xAxis.getDisplayPosition(x0), sx = xAxis.getScale();
+		double y0 = yAxis.getLowerBound(), py0 = yAxis.getDisplayPosition(y0), sy = yAxis.getScale();
+		for (CanvasSeries cs : canvasSeries) {
+			cs.prepare();
+			cs.draw(gc, x0, px0, sx, y0, py0, sy);
+		}
+	}
+	
+	//take over new samples of all streaming series, the timer stops when no streaming series is left
+	private void pullStreams() {
+		boolean isStreaming = false, hasNew = false;
+		double newest = Double.NEGATIVE_INFINITY;
+		Set <StreamingSamples> streams = new HashSet<>();
+		decimatedSeries.forEach(ds -> { if (ds.source instanceof StreamingSamples ss && getData().contains(ds.series)) streams.add(ss); });
+		canvasSeries.forEach(cs -> { if (cs.source instanceof StreamingSamples ss && getData().contains(cs.series)) streams.add(ss); });
+		for (StreamingSamples ss : streams) {
+			isStreaming = true;
+			if (ss.pull()) hasNew = true;
+			if (ss.count() > 0) newest = Math.max(newest, ss.lastX());
+		}
+		if (isStreaming == false) {
+			streamTimer.stop();
+			return;
+		}
+		if (menuSliding.isSelected() && newest > Double.NEGATIVE_INFINITY) {
+			xAxis.setAutoRanging(false);
+			xAxis.setLowerBound(newest - slidingWindow);
+			xAxis.setUpperBound(newest);
+		}
+		if (hasNew) {
+			isDecimationValid = false;
+			isCanvasValid = false;
+			requestLayout();
+		}
+	}
+	
+	private void invalidateDecimation() {
+		if (isDecimationValid && decimatedSeries.isEmpty() == false) {
+			isDecimationValid = false;
+			requestLayout();
+		}
+	}
+	
+	private void updateDecimation() {
+		isDecimationValid = true;
+		decimatedSeries.removeIf(ds -> getData().contains(ds.series) == false);
+		decimatedSeries.forEach(ds -> ds.update());
+	}
+	
+	//pixel columns of the plot area
+	private int columns() {
+		return xAxis.getWidth() > 0 ? (int) Math.ceil(xAxis.getWidth()) : DEFAULT_COLUMNS;
 	}
 	
 	@Override
@@ -271,6 +457,28 @@ public class InteractiveLineChart extends LineChart <Number, Number> {
 			return setValues(y, 1);
 		}
 
+		/**
+		 * set values for y-axis from a memory mapped file, x-values follow from start and interval of the samples,
+		 * only the samples needed for the visible range are read, always decimated with M4 on the min/max pyramid of the file
+		 * @param samples opened with MappedSamples.open()
+		 * @return Builder object
+		 */
+		public SeriesBuilder setY(MappedSamples samples) {
+			this.samples = samples;
+			return this;
+		}
+		
+		/**
+		 * set values for y-axis together with x-values from a buffer that other threads append to,
+		 * new samples are shown once per animation pulse, x-values should be ascending like time stamps
+		 * @param samples buffer holding the most recent samples
+		 * @return Builder object
+		 */
+		public SeriesBuilder setY(StreamingSamples samples) {
+			this.samples = samples;
+			return this;
+		}
+		
 		/**
 		 * provide a collection of arbitrary objects and an extractor function to get values for x-axis
 		 * @param <E>
@@ -321,16 +529,18 @@ public class InteractiveLineChart extends LineChart <Number, Number> {
 		private DataSymbol symbol;
 		private boolean isFilled = false;
 		private Boolean hasLegendEntry = true;
+		private Decimation decimation = Decimation.M4;
+		private SampleSource samples;
 		
 		/**
 		 * add data to the chart
 		 * @return generated Series
 		 */
 		public Series <Number, Number> plot() {
-			if (countX() == 0) {
+			if (samples == null && countX() == 0) {
 				dataX = IntStream.range(0, countY()).mapToDouble(i -> i).toArray();
 			}
-			if (countX() != countY()) {
+			if (samples == null && countX() != countY()) {
 				throw new RuntimeException("number of data elements must be equal, x=" + countX() + ", y=" + countY());
 			}
 			
@@ -353,12 +563,29 @@ public class InteractiveLineChart extends LineChart <Number, Number> {
 			}
 			
 			ObservableList <Data <Number, Number>> dataList = FXCollections.observableArrayList();
-			for (int i = 0; i < countX(); i++) dataList.add(new Data <Number, Number> (dataX[i], dataY[i]));
-			series.setData(dataList);
+			SampleSource source = samples != null ? samples : new ArraySource(dataX, dataY);
+			if (isCanvasRendering) {
+				//samples stay in the arrays, the mapped file or the stream buffer, the series only carries name and style
+				series.setData(dataList);
+				canvasSeries.add(new CanvasSeries(series, source, decimation, symbol == null ? DataSymbol.CIRCLE : symbol, isFilled));
+				isCanvasValid = false;
+				
+			} else if (samples != null || decimation != Decimation.NONE && source.isSorted()) {
+				//only the samples needed for the visible range are put into the series
+				DecimatedSeries ds = new DecimatedSeries(series, source, decimation);
+				series.setData(dataList);
+				ds.update();
+				decimatedSeries.add(ds);
+				
+			} else {
+				for (int i = 0; i < countX(); i++) dataList.add(new Data <Number, Number> (dataX[i], dataY[i]));
+				series.setData(dataList);
+			}
 			series.setName(name);
 			
 			//add series to chart
 			getData().add(series);
+			if (source instanceof StreamingSamples) streamTimer.start();
 			series.getNode().setStyle(cssLine.toString());
 
 			//set properties AFTER series has been added to chart
@@ -402,6 +629,17 @@ public class InteractiveLineChart extends LineChart <Number, Number> {
 			return this;
 		}
 		
+		/**
+		 * reduce the samples shown for large series with x values in ascending order, default is M4,
+		 * the full data is kept and the shown samples are selected again for each visible range
+		 * @param decimation method to select samples, NONE shows all samples
+		 * @return Builder object
+		 */
+		public SeriesBuilder setDecimation(Decimation decimation) {
+			this.decimation = decimation;
+			return this;
+		}
+		
 		//private members ------------------------------
 		
 		private void symbolSettings(Data <Number, Number> d, String cssSymbol) {
@@ -456,31 +694,237 @@ public class InteractiveLineChart extends LineChart <Number, Number> {
 	}
 
 	
+	//series that keeps all samples in arrays and shows only the samples selected for the visible range and width
+	private class DecimatedSeries {
+		
+		private final Series <Number, Number> series;
+		private final SampleSource source;
+		private final Decimation mode;
+		private double lo, hi;
+		private int columns;
+		private long version = -1;
+		
+		private DecimatedSeries(Series <Number, Number> series, SampleSource source, Decimation mode) {
+			this.series = series;
+			this.source = source;
+			this.mode = mode;
+		}
+		
+		//select samples again when range or width have changed, autoranging shows the whole series
+		private void update() {
+			if (source.count() == 0) return;
+			double lo = xAxis.isAutoRanging() ? source.firstX() : xAxis.getLowerBound();
+			double hi = xAxis.isAutoRanging() ? source.lastX() : xAxis.getUpperBound();
+			int columns = columns();
+			long version = source.version();
+			if (lo == this.lo && hi == this.hi && columns == this.columns && version == this.version) return;
+			this.lo = lo;
+			this.hi = hi;
+			this.columns = columns;
+			this.version = version;
+			
+			//existing data items are reused so that symbol nodes are not created again
+			Selection selection = source.select(mode, lo, hi, columns);
+			int count = selection.count();
+			ObservableList <Data <Number, Number>> list = series.getData();
+			int common = Math.min(list.size(), count);
+			for (int k = 0; k < common; k++) {
+				Data <Number, Number> d = list.get(k);
+				double xk = selection.x(k), yk = selection.y(k);
+				if (d.getXValue().doubleValue() != xk) d.setXValue(xk);
+				if (d.getYValue().doubleValue() != yk) d.setYValue(yk);
+			}
+			if (list.size() > count) {
+				list.remove(count, list.size());
+				
+			} else if (count > common) {
+				List <Data <Number, Number>> added = new ArrayList<>(count - common);
+				for (int k = common; k < count; k++) added.add(new Data <Number, Number> (selection.x(k), selection.y(k)));
+				list.addAll(added);
+			}
+		}
+	}
+	
+	
+	//series drawn onto the canvas of the chart, line color and width are taken from the styled path of the series
+	//sorted series draw the decimated samples of the visible range, others draw all samples
+	//samples on the same pixel as the previous one are skipped, symbols are copies of one image per series
+	private class CanvasSeries {
+		
+		private final Series <Number, Number> series;
+		private final SampleSource source;
+		private final Decimation mode;
+		private final DataSymbol symbol;
+		private final boolean isFilled;
+		private double lo = Double.NaN, hi = Double.NaN;
+		private int columns;
+		private long version = -1;
+		private Selection selection;
+		private int count;
+		private double minX, maxX, minY, maxY;
+		private Image stamp;
+		private Paint stampColor;
+		
+		private CanvasSeries(Series <Number, Number> series, SampleSource source, Decimation mode, DataSymbol symbol, boolean isFilled) {
+			this.series = series;
+			this.source = source;
+			this.mode = mode;
+			this.symbol = symbol;
+			this.isFilled = isFilled;
+		}
+		
+		//select the samples to draw when range or width have changed and find their extent
+		private void prepare() {
+			if (source.count() == 0) {
+				count = 0;
+				return;
+			}
+			boolean isFull = xAxis.isAutoRanging() || source.isSorted() == false;
+			double lo = isFull ? source.firstX() : xAxis.getLowerBound();
+			double hi = isFull ? source.lastX() : xAxis.getUpperBound();
+			int columns = columns();
+			long version = source.version();
+			if (lo == this.lo && hi == this.hi && columns == this.columns && version == this.version) return;
+			this.lo = lo;
+			this.hi = hi;
+			this.columns = columns;
+			this.version = version;
+			
+			selection = source.select(mode, lo, hi, columns);
+			count = selection.count();
+			minX = minY = Double.POSITIVE_INFINITY;
+			maxX = maxY = Double.NEGATIVE_INFINITY;
+			for (int k = 0; k < count; k++) {
+				double xk = selection.x(k), yk = selection.y(k);
+				if (xk < minX) minX = xk;
+				if (xk > maxX) maxX = xk;
+				if (yk < minY) minY = yk;
+				if (yk > maxY) maxY = yk;
+			}
+			if (minX > maxX || minY > maxY) count = 0;
+		}
+		
+		//pixel positions of the samples stroked in chunks that share their end points, gaps at samples that are not finite
+		private void draw(GraphicsContext gc, double x0, double px0, double sx, double y0, double py0, double sy) {
+			if (count == 0) return;
+			Shape path = (Shape) series.getNode();
+			gc.setStroke(path.getStroke());
+			gc.setLineWidth(path.getStrokeWidth());
+			gc.setLineCap(path.getStrokeLineCap());
+			gc.setLineJoin(path.getStrokeLineJoin());
+			double[] px = polylineX, py = polylineY;
+			int n = 0;
+			long lastPixel = Long.MIN_VALUE;
+			for (int k = 0; k < count; k++) {
+				double u = px0 + (selection.x(k) - x0) * sx, v = py0 + (selection.y(k) - y0) * sy;
+				if (Double.isFinite(u) == false || Double.isFinite(v) == false) {
+					if (n > 1) gc.strokePolyline(px, py, n);
+					n = 0;
+					lastPixel = Long.MIN_VALUE;
+					continue;
+				}
+				long pixel = (long) Math.floor(u) << 32 | (long) Math.floor(v) & 0xFFFF_FFFFL;
+				if (pixel == lastPixel) continue;
+				lastPixel = pixel;
+				px[n] = u;
+				py[n] = v;
+				n++;
+				if (n == POLYLINE_CHUNK) {
+					gc.strokePolyline(px, py, n);
+					px[0] = u;
+					py[0] = v;
+					n = 1;
+				}
+			}
+			if (n > 1) gc.strokePolyline(px, py, n);
+			
+			if (menuSymbols.isSelected() && symbol.shape != null) {
+				Image image = stamp(path.getStroke());
+				double dx = image.getWidth() / 2, dy = image.getHeight() / 2;
+				lastPixel = Long.MIN_VALUE;
+				for (int k = 0; k < count; k++) {
+					double u = px0 + (selection.x(k) - x0) * sx, v = py0 + (selection.y(k) - y0) * sy;
+					if (Double.isFinite(u) == false || Double.isFinite(v) == false) continue;
+					long pixel = (long) Math.floor(u) << 32 | (long) Math.floor(v) & 0xFFFF_FFFFL;
+					if (pixel == lastPixel) continue;
+					lastPixel = pixel;
+					gc.drawImage(image, Math.round(u - dx), Math.round(v - dy));
+				}
+			}
+		}
+		
+		//symbol drawn once into an image, outlined symbols have a white inner shape like the css symbols
+		private Image stamp(Paint color) {
+			if (stamp == null || Objects.equals(color, stampColor) == false) {
+				Canvas c = new Canvas(symbol.width, symbol.height);
+				GraphicsContext g = c.getGraphicsContext2D();
+				g.setFill(color);
+				g.beginPath();
+				g.appendSVGPath(symbol.shape);
+				g.fill();
+				if (isFilled == false && symbol.isFillable) {
+					double inset = 2.0;
+					g.translate(inset, inset);
+					g.scale((symbol.width - 2 * inset) / symbol.width, (symbol.height - 2 * inset) / symbol.height);
+					g.setFill(Color.WHITE);
+					g.beginPath();
+					g.appendSVGPath(symbol.shape);
+					g.fill();
+				}
+				SnapshotParameters parameters = new SnapshotParameters();
+				parameters.setFill(Color.TRANSPARENT);
+				stamp = c.snapshot(parameters, null);
+				stampColor = color;
+			}
+			return stamp;
+		}
+	}
+	
+	
+	public enum Decimation {
+		NONE,		//all samples
+		M4,			//first, last, minimum and maximum of each pixel column, the line looks the same as with all samples
+		LTTB,		//largest triangle three buckets, two samples per pixel column that keep the shape of the line
+		;
+	}
+	
+	
 	public enum DataSymbol {
 		DIAMOND	("-fx-background-radius: 0; -fx-background-insets: 0, 2.5; "
-				+ "-fx-padding: 6px 5px 6px 5px; -fx-shape: \"M 5,0 L 10,9 L 5,18 L 0,9 Z\"; ", true),
+				+ "-fx-padding: 6px 5px 6px 5px; -fx-shape: \"M 5,0 L 10,9 L 5,18 L 0,9 Z\"; ", true,
+				"M 5,0 L 10,6 L 5,12 L 0,6 Z", 10, 12),
 		
-		CIRCLE ("-fx-background-insets: 0, 2; -fx-background-radius: 5px; -fx-padding: 5px; ", true),
+		CIRCLE ("-fx-background-insets: 0, 2; -fx-background-radius: 5px; -fx-padding: 5px; ", true,
+				"M 0,5 A 5,5 0 1,1 10,5 A 5,5 0 1,1 0,5 Z", 10, 10),
 		
-		SQUARE ("-fx-background-radius: 0; -fx-padding: 4.5px; ", true),
+		SQUARE ("-fx-background-radius: 0; -fx-padding: 4.5px; ", true,
+				"M 0,0 H 9 V 9 H 0 Z", 9, 9),
 		
-		TRIANGLE ("-fx-background-radius: 0; -fx-background-insets: 0 0 1 0, 2.7 2.2 3 2.2; -fx-shape: \"M5,0 L10,8 L0,8 Z\"; ", true),
+		TRIANGLE ("-fx-background-radius: 0; -fx-background-insets: 0 0 1 0, 2.7 2.2 3 2.2; -fx-shape: \"M5,0 L10,8 L0,8 Z\"; ", true,
+				"M 5,0 L 10,10 L 0,10 Z", 10, 10),
 		
 		CROSS ("-fx-background-radius: 0; -fx-background-insets: 0; "
-				+ "-fx-shape: \"M2,0 L5,4 L8,0 L10,0 L10,2 L6,5 L10,8 L10,10 L8,10 L5,6 L2, 10 L0,10 L0,8 L4,5 L0,2 L0,0 Z\"; ", false),
+				+ "-fx-shape: \"M2,0 L5,4 L8,0 L10,0 L10,2 L6,5 L10,8 L10,10 L8,10 L5,6 L2, 10 L0,10 L0,8 L4,5 L0,2 L0,0 Z\"; ", false,
+				"M2,0 L5,4 L8,0 L10,0 L10,2 L6,5 L10,8 L10,10 L8,10 L5,6 L2, 10 L0,10 L0,8 L4,5 L0,2 L0,0 Z", 10, 10),
 		
 		PLUS ("-fx-background-radius: 0; -fx-background-insets: 0; "
-				+ "-fx-shape: \"M0,0 h 4 v -4 h 2 v 4 h 4 v 2 h -4 v 4 h -2 v -4 h -4 v -2 Z\"; ", false),
+				+ "-fx-shape: \"M0,0 h 4 v -4 h 2 v 4 h 4 v 2 h -4 v 4 h -2 v -4 h -4 v -2 Z\"; ", false,
+				"M 0,4 h 4 v -4 h 2 v 4 h 4 v 2 h -4 v 4 h -2 v -4 h -4 v -2 Z", 10, 10),
 		
-		NONE ("-fx-padding: 0px; ", false),
+		NONE ("-fx-padding: 0px; ", false, null, 0, 0),
 		;
 
 		private String path;
 		private boolean isFillable;
+		private String shape;			//svg path of the symbol drawn onto the canvas, null for no symbol
+		private double width, height;	//size of the shape in pixels
 		
-		private DataSymbol(String path, boolean isFillable) {
+		private DataSymbol(String path, boolean isFillable, String shape, double width, double height) {
 			this.path = path;
 			this.isFillable = isFillable;
+			this.shape = shape;
+			this.width = width;
+			this.height = height;
 		}
 	}
 }
@@ -670,4 +1114,45 @@ class CustomNumberAxis extends ValueAxis <Number> {
 			return baseValue() * Math.pow(10.0, magnitude()); 
 		}
 	}
-}
\ No newline at end of file
+}
+
+
+//samples in arrays, sorted when x is in ascending order
+class ArraySource implements SampleSource {
+	
+	private final double[] x, y;
+	private final boolean isSorted;
+	
+	ArraySource(double[] x, double[] y) {
+		this.x = x;
+		this.y = y;
+		this.isSorted = Decimator.isSorted(x);
+	}
+	
+	@Override
+	public long count() {
+		return x.length;
+	}
+	
+	@Override
+	public boolean isSorted() {
+		return isSorted;
+	}
+	
+	@Override
+	public double firstX() {
+		return x[0];
+	}
+	
+	@Override
+	public double lastX() {
+		return x[x.length - 1];
+	}
+	
+	@Override
+	public Selection select(InteractiveLineChart.Decimation mode, double lo, double hi, int columns) {
+		if (isSorted == false) return new Selection(x, y, null, x.length);
+		int[] idx = Decimator.decimate(mode, x, y, 0, x.length, lo, hi, columns);
+		return new Selection(x, y, idx, idx.length);
+	}
+}
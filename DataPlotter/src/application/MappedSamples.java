@@ -0,0 +1,349 @@
+package application;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.LongStream;
+
+import application.InteractiveLineChart.Decimation;
+
+//samples of a binary file of little endian doubles or floats, mapped into memory instead of being read onto the heap
+//a min/max pyramid is computed once in parallel and kept in a file <name>.pyramid next to the data file
+//drawing reads a few pyramid blocks per pixel column, single samples are only read when few of them are visible
+public class MappedSamples implements SampleSource {
+
+	public enum SampleType {
+		DOUBLE (ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN), null),
+		FLOAT (null, ValueLayout.JAVA_FLOAT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN)),
+		;
+
+		private final ValueLayout.OfDouble doubleLayout;
+		private final ValueLayout.OfFloat floatLayout;
+
+		private SampleType(ValueLayout.OfDouble doubleLayout, ValueLayout.OfFloat floatLayout) {
+			this.doubleLayout = doubleLayout;
+			this.floatLayout = floatLayout;
+		}
+
+		private long bytes() {
+			return doubleLayout != null ? doubleLayout.byteSize() : floatLayout.byteSize();
+		}
+	}
+
+	private static final long MAGIC = 0x4450505952414d31L;		//DPPYRAM1
+	private static final int HEADER = 64;						//bytes before the first level
+	private static final int BLOCK = 16;						//bytes per block, minimum and maximum as double
+	private static final int BASE = 256;						//samples per block of the finest level
+	private static final int FANOUT = 4;						//blocks of a level per block of the next coarser level
+	private static final int CHUNK = 4096;						//blocks computed by one parallel task
+	private static final ValueLayout.OfDouble PYRAMID_VALUE = ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+	private static final ValueLayout.OfLong PYRAMID_LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+	private static final ValueLayout.OfInt PYRAMID_INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+	private final SampleType type;
+	private final MemorySegment data;
+	private final MemorySegment pyramid;
+	private final long count;
+	private final double x0, dx;
+	private final long[] levelBlocks;		//number of blocks on each level
+	private final long[] levelOffsets;		//byte position of each level in the pyramid
+
+	/**
+	 * map a file of samples with x-values 0, 1, 2, ...
+	 * @see #open(Path, SampleType, double, double)
+	 */
+	public static MappedSamples open(Path file, SampleType type) throws IOException {
+		return open(file, type, 0.0, 1.0);
+	}
+
+	/**
+	 * map a file of samples, the pyramid is read from the file name.pyramid or computed and saved there when it is missing or outdated,
+	 * computing may take long for large files, call it away from the javafx thread
+	 * @param file binary file of little endian samples without header
+	 * @param type size of the samples
+	 * @param x0 x-value of the first sample
+	 * @param dx x-interval between samples, must be greater than zero
+	 * @return samples to plot with setY() of the SeriesBuilder
+	 */
+	public static MappedSamples open(Path file, SampleType type, double x0, double dx) throws IOException {
+		if ((dx > 0) == false) throw new IllegalArgumentException("interval must be greater than zero, dx=" + dx);
+		return new MappedSamples(file, type, x0, dx);
+	}
+
+	private MappedSamples(Path file, SampleType type, double x0, double dx) throws IOException {
+		this.type = type;
+		this.x0 = x0;
+		this.dx = dx;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			count = size / type.bytes();
+			data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size, Arena.ofAuto());
+		}
+
+		//blocks of each level, the coarsest level has a single block
+		int levels = 0;
+		for (long blocks = ceilDiv(count, BASE); blocks > 0; blocks = blocks == 1 ? 0 : ceilDiv(blocks, FANOUT)) levels++;
+		levelBlocks = new long[levels];
+		levelOffsets = new long[levels];
+		long offset = HEADER;
+		for (int k = 0; k < levels; k++) {
+			levelBlocks[k] = k == 0 ? ceilDiv(count, BASE) : ceilDiv(levelBlocks[k - 1], FANOUT);
+			levelOffsets[k] = offset;
+			offset += levelBlocks[k] * BLOCK;
+		}
+
+		//the pyramid belongs to the data file as long as size and modification time match
+		long modified = Files.getLastModifiedTime(file).toMillis();
+		Path target = Path.of(file + ".pyramid");
+		MemorySegment loaded = load(target, offset, modified);
+		if (loaded == null) {
+			try {
+				loaded = build(target, offset, modified);
+
+			} catch (IOException e) {
+				//no permission next to the data file, the pyramid is kept in a temporary file for this session
+				Path temp = Files.createTempFile("pyramid", ".tmp");
+				temp.toFile().deleteOnExit();
+				loaded = build(temp, offset, modified);
+			}
+		}
+		pyramid = loaded;
+	}
+
+	//number of samples in the file
+	@Override
+	public long count() {
+		return count;
+	}
+
+	@Override
+	public boolean isSorted() {
+		return true;
+	}
+
+	@Override
+	public double firstX() {
+		return x0;
+	}
+
+	@Override
+	public double lastX() {
+		return x(count - 1);
+	}
+
+	//value of sample i
+	public double sample(long i) {
+		return type.doubleLayout != null ? data.getAtIndex(type.doubleLayout, i) : data.getAtIndex(type.floatLayout, i);
+	}
+
+	//the mode is not used, pyramid blocks give minimum and maximum but not the samples in between that LTTB needs
+	@Override
+	public Selection select(Decimation mode, double lo, double hi, int columns) {
+		long from = Math.max(lowerIndex(lo) - 1, 0);
+		long to = Math.min(upperIndex(hi) + 1, count);
+		if (to <= from) return new Selection(new double[0], new double[0], null, 0);
+		long visible = to - from;
+
+		//coarsest level whose blocks are at most a quarter of a column, assigning whole blocks to columns is then exact within a quarter pixel
+		double perColumn = (double) visible / columns;
+		int level = -1;
+		for (int k = 0; k < levelBlocks.length && blockSize(k) * 4.0 <= perColumn; k++) level = k;
+
+		if (visible <= 4L * columns) return samples(from, to);
+		else if (level < 0) return m4(from, to, columns);
+		else return minMax(from, to, columns, level);
+	}
+
+	//all samples of the range
+	private Selection samples(long from, long to) {
+		int n = (int) (to - from);
+		double[] xs = new double[n], ys = new double[n];
+		for (int k = 0; k < n; k++) {
+			xs[k] = x(from + k);
+			ys[k] = sample(from + k);
+		}
+		return new Selection(xs, ys, null, n);
+	}
+
+	//first, minimum, maximum and last sample of each column read from the samples, used while columns have few samples
+	private Selection m4(long from, long to, int columns) {
+		double[] xs = new double[columns * 4 + 4], ys = new double[columns * 4 + 4];
+		int n = 0;
+		long visible = to - from;
+		for (int c = 0; c < columns; c++) {
+			long a = from + visible * c / columns, b = from + visible * (c + 1) / columns;
+			if (b <= a) continue;
+			long min = a, max = a;
+			double minValue = sample(a), maxValue = minValue;
+			for (long i = a + 1; i < b; i++) {
+				double v = sample(i);
+				if (v < minValue || Double.isNaN(minValue)) {
+					minValue = v;
+					min = i;
+				}
+				if (v > maxValue || Double.isNaN(maxValue)) {
+					maxValue = v;
+					max = i;
+				}
+			}
+			long[] picked = {a, Math.min(min, max), Math.max(min, max), b - 1};
+			for (int j = 0; j < picked.length; j++) {
+				if (j > 0 && picked[j] == picked[j - 1]) continue;
+				xs[n] = x(picked[j]);
+				ys[n] = sample(picked[j]);
+				n++;
+			}
+		}
+		return new Selection(xs, ys, null, n);
+	}
+
+	//minimum and maximum of each column from the pyramid, the one nearer to the previous point comes first
+	//first and last sample of the range are added so that the line reaches the border of the plot area
+	private Selection minMax(long from, long to, int columns, int level) {
+		double[] xs = new double[columns * 2 + 2], ys = new double[columns * 2 + 2];
+		int n = 0;
+		xs[n] = x(from);
+		ys[n] = sample(from);
+		n++;
+		long visible = to - from, size = blockSize(level);
+		for (int c = 0; c < columns; c++) {
+			long a = from + visible * c / columns, b = from + visible * (c + 1) / columns;
+			long b0 = ceilDiv(a, size), b1 = Math.min(ceilDiv(b, size), levelBlocks[level]);
+			double minValue = Double.POSITIVE_INFINITY, maxValue = Double.NEGATIVE_INFINITY;
+			for (long block = b0; block < b1; block++) {
+				long position = levelOffsets[level] + block * BLOCK;
+				double blockMin = pyramid.get(PYRAMID_VALUE, position), blockMax = pyramid.get(PYRAMID_VALUE, position + 8);
+				if (blockMin < minValue) minValue = blockMin;
+				if (blockMax > maxValue) maxValue = blockMax;
+			}
+			if (minValue > maxValue) continue;
+			double xc = x(a + (b - a) / 2);
+			boolean minFirst = Math.abs(ys[n - 1] - minValue) <= Math.abs(ys[n - 1] - maxValue);
+			xs[n] = xc;
+			ys[n++] = minFirst ? minValue : maxValue;
+			xs[n] = xc;
+			ys[n++] = minFirst ? maxValue : minValue;
+		}
+		xs[n] = x(to - 1);
+		ys[n] = sample(to - 1);
+		n++;
+		return new Selection(xs, ys, null, n);
+	}
+
+	//existing pyramid when it was made for this file with the same geometry, null otherwise
+	private MemorySegment load(Path path, long size, long modified) {
+		if (Files.isRegularFile(path) == false) return null;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() != size) return null;
+			MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, size, Arena.ofAuto());
+			boolean valid = segment.get(PYRAMID_LONG, 0) == MAGIC
+					&& segment.get(PYRAMID_LONG, 8) == count
+					&& segment.get(PYRAMID_LONG, 16) == modified
+					&& segment.get(PYRAMID_INT, 24) == type.ordinal()
+					&& segment.get(PYRAMID_INT, 28) == BASE
+					&& segment.get(PYRAMID_INT, 32) == FANOUT
+					&& segment.get(PYRAMID_INT, 36) == levelBlocks.length;
+			return valid ? segment : null;
+
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	//compute all levels in parallel into a temporary file that replaces the target when complete
+	private MemorySegment build(Path target, long size, long modified) throws IOException {
+		Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+		try (Arena arena = Arena.ofShared(); FileChannel channel = FileChannel.open(temp,
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+			MemorySegment out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size, arena);
+			for (int k = 0; k < levelBlocks.length; k++) {
+				int level = k;
+				LongStream.range(0, ceilDiv(levelBlocks[level], CHUNK)).parallel().forEach(chunk -> {
+					long end = Math.min((chunk + 1) * CHUNK, levelBlocks[level]);
+					for (long block = chunk * CHUNK; block < end; block++) {
+						if (level == 0) buildBlock(out, block);
+						else combineBlocks(out, level, block);
+					}
+				});
+			}
+
+			//header comes last, an interrupted build leaves a file that is not valid
+			out.set(PYRAMID_LONG, 8, count);
+			out.set(PYRAMID_LONG, 16, modified);
+			out.set(PYRAMID_INT, 24, type.ordinal());
+			out.set(PYRAMID_INT, 28, BASE);
+			out.set(PYRAMID_INT, 32, FANOUT);
+			out.set(PYRAMID_INT, 36, levelBlocks.length);
+			out.set(PYRAMID_LONG, 0, MAGIC);
+			out.force();
+		}
+		Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		MemorySegment loaded = load(target, size, modified);
+		if (loaded == null) throw new IOException("cannot read pyramid " + target);
+		return loaded;
+	}
+
+	//minimum and maximum of the samples of one block of the finest level, NaN when no sample is a number
+	private void buildBlock(MemorySegment out, long block) {
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		long end = Math.min((block + 1) * BASE, count);
+		for (long i = block * BASE; i < end; i++) {
+			double v = sample(i);
+			if (v < min) min = v;
+			if (v > max) max = v;
+		}
+		putBlock(out, 0, block, min, max);
+	}
+
+	//minimum and maximum of the blocks of the finer level that make up one block
+	private void combineBlocks(MemorySegment out, int level, long block) {
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		long end = Math.min((block + 1) * FANOUT, levelBlocks[level - 1]);
+		for (long i = block * FANOUT; i < end; i++) {
+			long position = levelOffsets[level - 1] + i * BLOCK;
+			double blockMin = out.get(PYRAMID_VALUE, position), blockMax = out.get(PYRAMID_VALUE, position + 8);
+			if (blockMin < min) min = blockMin;
+			if (blockMax > max) max = blockMax;
+		}
+		putBlock(out, level, block, min, max);
+	}
+
+	private void putBlock(MemorySegment out, int level, long block, double min, double max) {
+		long position = levelOffsets[level] + block * BLOCK;
+		out.set(PYRAMID_VALUE, position, min <= max ? min : Double.NaN);
+		out.set(PYRAMID_VALUE, position + 8, min <= max ? max : Double.NaN);
+	}
+
+	//samples per block on the given level
+	private long blockSize(int level) {
+		long size = BASE;
+		for (int k = 0; k < level; k++) size *= FANOUT;
+		return size;
+	}
+
+	private double x(long i) {
+		return x0 + i * dx;
+	}
+
+	//index of the first sample with x not less than value
+	private long lowerIndex(double value) {
+		return (long) Math.ceil(Math.clamp((value - x0) / dx, -1.0, count + 1.0));
+	}
+
+	//index of the first sample with x greater than value
+	private long upperIndex(double value) {
+		return (long) Math.floor(Math.clamp((value - x0) / dx, -1.0, count + 1.0)) + 1;
+	}
+
+	private static long ceilDiv(long a, long b) {
+		return (a + b - 1) / b;
+	}
+}
@@ -0,0 +1,22 @@
+package application;
+
+//samples of a series, sorted sources select the samples needed to draw a range of x on a number of pixel columns
+public interface SampleSource {
+	
+	long count();
+	
+	boolean isSorted();
+	
+	//x of the first and the last sample, the whole range for sorted sources
+	double firstX();
+	
+	double lastX();
+	
+	//unsorted sources select all samples regardless of range and columns
+	Selection select(InteractiveLineChart.Decimation mode, double lo, double hi, int columns);
+	
+	//changes when samples have been added
+	default long version() {
+		return 0;
+	}
+}
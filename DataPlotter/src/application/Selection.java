@@ -0,0 +1,13 @@
+package application;
+
+//samples selected for drawing in ascending order of x, arrays are read directly or through the indices in idx
+public record Selection(double[] x, double[] y, int[] idx, int count) {
+	
+	double x(int k) {
+		return x[idx == null ? k : idx[k]];
+	}
+	
+	double y(int k) {
+		return y[idx == null ? k : idx[k]];
+	}
+}
@@ -0,0 +1,149 @@
+package application;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import application.InteractiveLineChart.Decimation;
+
+//samples appended from any thread into a ring of fixed capacity, the oldest samples are overwritten when it is full
+//appending reserves slots with one atomic add, each slot is guarded by a stamp that is odd while it is written and even once its sample is published
+//a producer only waits when an older one, a whole capacity behind, is still writing the same slot
+//the chart takes over the stamped samples once per pulse into a mirrored copy, so the newest capacity samples are contiguous
+public class StreamingSamples implements SampleSource {
+
+	private final int capacity;
+
+	//ring written by producers, sample number n is kept in slot n % capacity
+	//the stamp of the slot is 2n + 1 while n is written and 2n + 2 once it is published, 0 when nothing has been written yet
+	private final double[] xs, ys;
+	private final AtomicLongArray stamps;
+	private final AtomicLong reserved = new AtomicLong();
+
+	//copy owned by the javafx thread, every sample is kept twice, at slot and slot + capacity
+	private final double[] mx, my;
+	private long start, end;
+	private long lastDescent;			//number of the last sample with x less than its predecessor
+
+	/**
+	 * create an empty ring buffer
+	 * @param capacity number of the newest samples that are kept and plotted
+	 */
+	public StreamingSamples(int capacity) {
+		if (capacity < 1 || capacity > 1 << 30) throw new IllegalArgumentException("capacity must be from 1 to 2^30, capacity=" + capacity);
+		this.capacity = capacity;
+		this.xs = new double[capacity];
+		this.ys = new double[capacity];
+		this.stamps = new AtomicLongArray(capacity);
+		this.mx = new double[capacity * 2];
+		this.my = new double[capacity * 2];
+	}
+
+	/**
+	 * append one sample, may be called from any thread
+	 */
+	public void append(double x, double y) {
+		put(reserved.getAndIncrement(), x, y);
+	}
+
+	/**
+	 * append the first n samples of the arrays in one step, may be called from any thread
+	 */
+	public void append(double[] x, double[] y, int n) {
+		if (n > x.length || n > y.length) throw new IllegalArgumentException("arrays are shorter than n=" + n);
+		if (n <= 0) return;
+		long seq = reserved.getAndAdd(n);
+		for (int k = 0; k < n; k++) put(seq + k, x[k], y[k]);
+	}
+
+	//marks the slot as being written before the data and publishes it after, stamps of a slot only grow
+	private void put(long seq, double x, double y) {
+		int slot = (int) (seq % capacity);
+		long busy = 2 * seq + 1;
+		for (long stamp = stamps.get(slot); ; stamp = stamps.get(slot)) {
+			if (stamp > busy) return;			//a newer sample took the slot already, this one is overwritten
+			if ((stamp & 1) == 0 && stamps.compareAndSet(slot, stamp, busy)) break;
+			Thread.onSpinWait();
+		}
+		VarHandle.storeStoreFence();
+		xs[slot] = x;
+		ys[slot] = y;
+		stamps.setRelease(slot, busy + 1);
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	//number of samples appended so far including overwritten ones
+	public long appended() {
+		return reserved.get();
+	}
+
+	//take over new samples on the javafx thread up to the first one that is still being written, returns false when there is nothing new
+	//samples overwritten before or while they were copied are dropped together with all older ones
+	boolean pull() {
+		long limit = reserved.get();
+		long q = Math.max(end, limit - capacity), from = q, dropped = start;
+		for (; q < limit; q++) {
+			int slot = (int) (q % capacity);
+			long stamp = stamps.getAcquire(slot);
+			if (stamp <= 2 * q + 1) break;			//not yet written or still being written
+			double x = xs[slot], y = ys[slot];
+			VarHandle.acquireFence();
+			if (stamp != 2 * q + 2 || stamps.get(slot) != stamp) {
+				dropped = q + 1;
+				continue;
+			}
+			mx[slot] = mx[slot + capacity] = x;
+			my[slot] = my[slot + capacity] = y;
+		}
+		if (q == end) return false;
+		if (from > end) dropped = Math.max(dropped, from);
+		end = q;
+		start = Math.max(dropped, end - capacity);
+		for (long k = Math.max(from, start + 1); k < end; k++) {
+			int slot = (int) (k % capacity);
+			if ((mx[slot + capacity] >= mx[slot + capacity - 1]) == false) lastDescent = k;
+		}
+		if (start < end && Double.isNaN(mx[(int) (start % capacity)])) lastDescent = Math.max(lastDescent, start + 1);
+		return true;
+	}
+
+	@Override
+	public long count() {
+		return end - start;
+	}
+
+	@Override
+	public boolean isSorted() {
+		return lastDescent <= start;
+	}
+
+	@Override
+	public double firstX() {
+		return mx[(int) (start % capacity)];
+	}
+
+	@Override
+	public double lastX() {
+		return mx[(int) ((end - 1) % capacity)];
+	}
+
+	@Override
+	public long version() {
+		return end;
+	}
+
+	@Override
+	public Selection select(Decimation mode, double lo, double hi, int columns) {
+		int s = (int) (start % capacity), n = (int) count();
+		if (isSorted()) {
+			int[] idx = Decimator.decimate(mode, mx, my, s, s + n, lo, hi, columns);
+			return new Selection(mx, my, idx, idx.length);
+		}
+		int[] idx = new int[n];
+		for (int k = 0; k < n; k++) idx[k] = s + k;
+		return new Selection(mx, my, idx, n);
+	}
+}
@@ -49,6 +49,11 @@ public class FFmpegFrame {
 		return new FFmpegWriterBuilder();
 	}
 	
+	//build an instance to create a video from raw frames in any pixel format known to ffmpeg
+	public static FFmpegRawWriterBuilder rawWriterBuilder() {
+		return new FFmpegRawWriterBuilder();
+	}
+	
 	//create an instance from custom ffmpeg command line
 	public static FFmpegFrame customFFmpegArgs(List<String> ffmpegArgs) throws IOException {
 		ProcessBuilder pb = new ProcessBuilder(ffmpegArgs);
@@ -66,6 +71,11 @@ public class FFmpegFrame {
 		os.write(data);
 	}
 	
+	//write part of an array directly, raw frames can be written from a larger buffer
+	public void writeBytes(byte[] data, int offset, int length) throws IOException {
+		os.write(data, offset, length);
+	}
+	
 	//read video frame into BufferedImage, will be null when no data was read
 	public BufferedImage readFrame() throws IOException {
 		return ImageIO.read(is);
@@ -193,4 +203,88 @@ public class FFmpegFrame {
 			return new FFmpegFrame(p);
 		}
 	}
+	
+	public static class FFmpegRawWriterBuilder {
+		
+		private String ffmpegPath = "ffmpeg";
+		private String outputFile = "";
+		private File workingDir = null;
+		private String codec = "libx264";
+		private String pixFmt = "yuv420p";
+		private String inputPixFmt = "rgb24";
+		private int width = 0;
+		private int height = 0;
+		private double fps = 25.0;
+		private List<String> inputArgs = List.of();
+		
+		private FFmpegRawWriterBuilder() {}
+		
+		public FFmpegRawWriterBuilder setFFmpegPath(String ffmpegPath) {
+			this.ffmpegPath = ffmpegPath;
+			return this;
+		}
+		
+		public FFmpegRawWriterBuilder setOutputFile(String outputFile) {
+			this.outputFile = outputFile;
+			return this;
+		}
+		
+		public FFmpegRawWriterBuilder setWorkingDir(File workingDir) {
+			this.workingDir = workingDir;
+			return this;
+		}
+		
+		public FFmpegRawWriterBuilder setFps(double fps) {
+			this.fps = fps;
+			return this;
+		}
+		
+		public FFmpegRawWriterBuilder setCodec(String codec) {
+			this.codec = codec;
+			return this;
+		}
+		
+		//pixel format of the video file, null keeps the input format when the codec supports it
+		public FFmpegRawWriterBuilder setPixFmt(String pixFmt) {
+			this.pixFmt = pixFmt;
+			return this;
+		}
+		
+		//layout of the frames written to the pipe, for example yuv420p, nv12 or bgra
+		public FFmpegRawWriterBuilder setInputPixFmt(String inputPixFmt) {
+			this.inputPixFmt = inputPixFmt;
+			return this;
+		}
+		
+		public FFmpegRawWriterBuilder setSize(int width, int height) {
+			this.width = width;
+			this.height = height;
+			return this;
+		}
+		
+		//further options describing the input, for example color range or color space
+		public FFmpegRawWriterBuilder setInputArgs(List<String> inputArgs) {
+			this.inputArgs = inputArgs;
+			return this;
+		}
+		
+		//arguments of the ffmpeg command line
+		public List<String> args() {
+			List<String> args = new ArrayList<>(List.of(
+					ffmpegPath.toString(), "-hide_banner", "-nostats", "-f", "rawvideo", "-pix_fmt", inputPixFmt, 
+					"-s", width + "x" + height, "-framerate", String.valueOf(fps)));
+			args.addAll(inputArgs);
+			args.addAll(List.of("-i", "-", "-vcodec", codec));
+			if (pixFmt != null) args.addAll(List.of("-pix_fmt", pixFmt));
+			args.addAll(List.of(outputFile.toString(), "-y"));
+			return args;
+		}
+		
+		public FFmpegFrame build() throws IOException {
+			ProcessBuilder pb = new ProcessBuilder(args());
+			pb.directory(workingDir);
+			Process p = pb.start();
+			return new FFmpegFrame(p);
+		}
+	}
 }
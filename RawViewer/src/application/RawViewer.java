@@ -1,12 +1,81 @@
 package application;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import java.util.prefs.BackingStoreException;
 import java.util.prefs.Preferences;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
+import jdk.incubator.vector.*;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Name;
+
+import application.RawViewer.FormatConverter;
+import application.RawViewer.FormatConverter.Plane;
+import application.RawViewer.FormatConverter.RawLayout;
+import application.RawViewer.YuvTable;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.beans.property.SimpleIntegerProperty;
@@ -18,9 +87,14 @@ import javafx.geometry.Pos;
 import javafx.stage.FileChooser;
 import javafx.stage.FileChooser.ExtensionFilter;
 import javafx.stage.Stage;
+import javafx.stage.Window;
+import javafx.util.Duration;
+import javafx.util.StringConverter;
 import javafx.util.converter.DoubleStringConverter;
 import javafx.util.converter.IntegerStringConverter;
 import javafx.scene.Scene;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.*;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.image.*;
@@ -29,22 +103,19 @@ import javafx.scene.input.TransferMode;
 import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.SVGPath;
+import javafx.scene.text.Font;
 
 public class RawViewer extends Application {
 	
-	//list of implemented pixel formats and converter functions
-	private final Map<String, FormatConverter> formatMap = Map.of(
-			"Y", new FormatConverterY(), 
-			"YUV420", new FormatConverterYUV420(), 
-			"YUV444", new FormatConverterYUV444(), 
-			"RGB24", new FormatConverterRGB24(),
-			"BGR24", new FormatConverterBGR24(),
-			"NV12", new FormatConverterNV12(),
-			"NV21", new FormatConverterNV21()
-			);
+	//list of implemented pixel formats and converter functions, collected from all format providers
+	private final Map<String, FormatConverter> formatMap = loadFormats();
+	
+	//selectable yuv value ranges
+	static final String RANGE_FULL = "Full";
+	static final String RANGE_LIMITED = "Limited";
 	
 	//list of predefined selectable values
-	private final List<Integer> pixelList = Arrays.asList(200, 360, 480, 576, 720, 840, 1024, 1080, 1440, 1920, 2560);
+	static final List<Integer> pixelList = Arrays.asList(200, 360, 480, 576, 720, 840, 1024, 1080, 1440, 1920, 2560);
 	
 	//collection of svg paths for icons
 	private final String svgOpen = "M320 464c8.8 0 16-7.2 16-16l0-288-80 0c-17.7 0-32-14.3-32-32l0-80L64 48c-8.8 0-16 7.2-16 16l0 384c0 8.8 7.2 16 16 16l256 0" +
@@ -65,21 +136,63 @@ public class RawViewer extends Application {
 
 	//input arguments
 	private static String[] args;
+	
+	//largest frame that is converted as a whole, raw data must fit into an array
+	private static final long MAX_FRAME_BYTES = Integer.MAX_VALUE - 8;
 
 	//preferences store settings permanently
 	private Preferences prefs = Preferences.userRoot().node("rainermtb/rawviewer");
 	
 	private File inputFile;
 	private String inputDirectory;
-	private RandomAccessFile input;
+	private FrameSource input;
 	private LoaderTask loaderTask = new LoaderTask();
+	private DisplayTargets displayTargets;
+	private DisplayTargets regionTargets;
+	private IntBuffer referencePixels;		//reference frame of the difference view, reused while the frame size stays the same
+	private TileCache tileCache;
+	private FrameSource reference;
+	private Task<Y4mSource> inputIndexing, referenceIndexing;		//yuv4mpeg2 files being opened, a newer open replaces them
+	private FrameComparison comparison;
+	private Thumbnails thumbnails;
+	private FrameAnalytics analytics;
+	private Task<String> exportTask;
+	private final LatestRequestExecutor loaderExecutor = new LatestRequestExecutor("RawViewer Loader");
 	
 	private Spinner<Integer> spinnerFrameIdx;
 	private ComboBox<Integer> comboWidth;
 	private ComboBox<Integer> comboHeight;
 	private ComboBox<String> comboFormat;
 	private ComboBox<Double> comboFps;
+	private ComboBox<YuvMatrix> comboMatrix;
+	private ComboBox<String> comboRange;
 	private ImageView imageView;
+	private ImageViewPane imagePane;
+	private Label lblStatus;
+	private CheckBox checkAdaptive;
+	private CheckBox checkHud;
+	private Label lblHud;
+	private Button btnExport;
+	private Label lblExport;
+	private final PipelineTimings timings = new PipelineTimings();
+	private final SyncGroup sync = new SyncGroup();
+	private final VideoScopes scopes = new VideoScopes();
+	private CheckBox checkScopes;
+	private ScopesView scopesView;
+	private final Timeline scopesTimer = new Timeline(new KeyFrame(Duration.millis(100), _ -> refreshScopes()));
+	private HBox viewRow;
+	private IntegerStringConverter sizeConverter;
+	private final Timeline hudTimer = new Timeline(new KeyFrame(Duration.millis(250), _ -> lblHud.setText(timings.summary())));
+	private CheckBox checkFollow;
+	private CheckBox checkNewest;
+	private final Timeline followTimer = new Timeline(new KeyFrame(Duration.millis(250), _ -> follow()));
+	private CheckBox checkDiff;
+	private MetricStrip metricStrip;
+	private final Timeline stripTimer = new Timeline(new KeyFrame(Duration.millis(250), _ -> refreshStrip()));
+	private ThumbnailStrip thumbnailStrip;
+	private final Timeline thumbnailTimer = new Timeline(new KeyFrame(Duration.millis(250), _ -> refreshThumbnails()));
+	private AnalyticsStrip analyticsStrip;
+	private final Timeline analyticsTimer = new Timeline(new KeyFrame(Duration.millis(250), _ -> refreshAnalytics()));
 	private SimpleIntegerProperty propFrameMax = new SimpleIntegerProperty(1);
 
 	//main function
@@ -91,15 +204,373 @@ public class RawViewer extends Application {
 	//start a new loader task
 	private void startLoader(boolean play) {
 		loaderTask.cancel(false);
+		updateComparison();
+		updateThumbnails();
+		updateAnalytics();
 		loaderTask = new LoaderTask(play);
-		Thread th = new Thread(loaderTask);
-		th.start();
+		lblStatus.textProperty().bind((inputIndexing != null && inputIndexing.isDone() == false ? inputIndexing : loaderTask).messageProperty());
+		loaderExecutor.execute(loaderTask);
 	}
 	
 	//start a new loader task
 	private void startLoader() {
 		startLoader(false);
 	}
+	
+	//stop playback and show the frame where playback stopped in full resolution
+	private void pause() {
+		loaderTask.cancel(false);
+		if (loaderTask.isPlaying) showFullFrame(loaderTask.getIdxShown());
+	}
+	
+	//move the frame spinner to a frame shown during playback, which triggers a full resolution load
+	private void showFullFrame(long idx) {
+		if (idx < 0 || idx == spinnerFrameIdx.getValue()) startLoader();
+		else spinnerFrameIdx.getValueFactory().setValue((int) idx);
+	}
+	
+	//close the current input and open the given file for reading, named pipes are read as a stream
+	//a yuv4mpeg2 file becomes the input when its frames have been indexed in the background
+	private void openInput(File file) throws IOException {
+		try { input.close(); } catch (Exception e) {}
+		input = null;
+		inputFile = file;
+		inputIndexing = null;
+		if (file.isFile() && Y4mSource.isY4m(file.toPath())) openY4m(file.toPath());
+		else input = file.isFile() ? new FileSource(file.toPath()) : new StreamSource(() -> new FileInputStream(file), StreamSource.HISTORY_BYTES);
+	}
+	
+	//settings are taken from the header of a yuv4mpeg2 file
+	private void openY4m(Path path) {
+		Task<Y4mSource> task = inputIndexing = indexY4m(path);
+		task.setOnSucceeded(_ -> {
+			Y4mSource y4m = task.getValue();
+			if (task != inputIndexing) {
+				try { y4m.close(); } catch (Exception e) {}
+				return;
+			}
+			inputIndexing = null;
+			input = y4m;
+			comboWidth.setValue(y4m.w);
+			comboHeight.setValue(y4m.h);
+			comboFormat.setValue(y4m.format);
+			comboFps.setValue(Math.round(y4m.fps * 1000) / 1000.0);
+			if (y4m.range != null) comboRange.setValue(y4m.range);
+			startLoader();
+		});
+	}
+	
+	//indexing a long yuv4mpeg2 file for the first time takes a while, so it runs on its own thread
+	//the caller handles success on the javafx thread, a failure is reported here
+	private Task<Y4mSource> indexY4m(Path path) {
+		Task<Y4mSource> task = new Task<>() {
+			@Override protected Y4mSource call() throws Exception {
+				updateMessage("indexing " + path.getFileName());
+				return new Y4mSource(path, formatMap);
+			}
+		};
+		task.setOnFailed(_ -> {
+			new Alert(AlertType.ERROR, "Cannot open file: " + task.getException().getMessage(), ButtonType.OK).show();
+			startLoader();
+		});
+		Thread.ofPlatform().name("RawViewer Index").daemon().start(task);
+		return task;
+	}
+	
+	//open a file to compare the input with, a canceled selection ends comparing
+	private void openReference(File file) throws IOException {
+		try { reference.close(); } catch (Exception e) {}
+		reference = null;
+		referenceIndexing = null;
+		if (file != null) {
+			Path path = file.toPath();
+			if (Y4mSource.isY4m(path)) {
+				Task<Y4mSource> task = referenceIndexing = indexY4m(path);
+				task.setOnSucceeded(_ -> {
+					if (task != referenceIndexing) {
+						try { task.getValue().close(); } catch (Exception e) {}
+						return;
+					}
+					referenceIndexing = null;
+					reference = task.getValue();
+					startLoader();
+				});
+				
+			} else {
+				reference = new FileSource(path);
+			}
+		}
+	}
+	
+	//restart the comparison when input, reference or settings have changed
+	private void updateComparison() {
+		Integer w = comboWidth.getValue(), h = comboHeight.getValue();
+		FormatConverter converter = formatMap.get(comboFormat.getValue());
+		FrameComparison.Setup setup = null;
+		if (input != null && reference != null && w != null && w > 0 && h != null && h > 0 && isFullFrameSupported(converter.frameSize(w, h), w, h)) {
+			setup = new FrameComparison.Setup(input, reference, converter, w, h, comboMatrix.getValue(), comboRange.getValue());
+		}
+		if (Objects.equals(setup, comparison == null ? null : comparison.setup) == false) {
+			if (comparison != null) comparison.cancel();
+			comparison = null;
+			try {
+				if (setup != null) comparison = new FrameComparison(setup, new YuvTable(setup.matrix(), setup.range().equals(RANGE_LIMITED)));
+				
+			} catch (IOException e) {
+				new Alert(AlertType.ERROR, "Cannot compare: " + e.getMessage(), ButtonType.OK).showAndWait();
+			}
+			metricStrip.setComparison(comparison);
+			metricStrip.setVisible(comparison != null);
+			metricStrip.setManaged(comparison != null);
+			if (comparison != null) stripTimer.play();
+		}
+		metricStrip.setCurrent(spinnerFrameIdx.getValue());
+	}
+	
+	//redraw the metric strip while the comparison is running
+	private void refreshStrip() {
+		metricStrip.redraw();
+		if (comparison == null || comparison.isDone()) stripTimer.stop();
+	}
+	
+	//make thumbnails of a file when it is opened or settings have changed, streams get no thumbnails
+	//a followed file that has grown keeps the thumbnails made so far, only those of new frames are made
+	private void updateThumbnails() {
+		Integer w = comboWidth.getValue(), h = comboHeight.getValue();
+		FormatConverter converter = formatMap.get(comboFormat.getValue());
+		Thumbnails.Key key = null;
+		long size = 0, modified = 0;
+		if (input instanceof FileSource && inputFile != null && w != null && w > 0 && h != null && h > 0) {
+			try {
+				key = new Thumbnails.Key(input, converter, comboFormat.getValue(), w, h, comboMatrix.getValue(), comboRange.getValue());
+				size = input.size();
+				modified = inputFile.lastModified();
+				
+			} catch (IOException e) {
+				//input closed, no thumbnails
+			}
+		}
+		Thumbnails previous = thumbnails;
+		boolean isSame = Objects.equals(key, previous == null ? null : previous.key);
+		boolean isGrown = isSame && previous != null && checkFollow.isSelected() && size > previous.size;
+		boolean isChanged = isSame && previous != null && isGrown == false 
+				&& (size != previous.size || checkFollow.isSelected() == false && modified != previous.modified);
+		if (isSame == false || isGrown || isChanged) {
+			if (previous != null) previous.cancel();
+			thumbnails = key == null ? null : new Thumbnails(key, size, modified, Path.of(inputFile.getPath() + ".thumbs"), isGrown ? previous : null);
+			thumbnailStrip.setThumbnails(thumbnails);
+			thumbnailStrip.setVisible(thumbnails != null);
+			thumbnailStrip.setManaged(thumbnails != null);
+			if (thumbnails != null) thumbnailTimer.play();
+		}
+		thumbnailStrip.setCurrent(spinnerFrameIdx.getValue());
+	}
+	
+	//analyze a file when it is opened or size or format have changed, streams are not analyzed
+	//a followed file that has grown keeps the values computed so far, only new frames are analyzed
+	private void updateAnalytics() {
+		Integer w = comboWidth.getValue(), h = comboHeight.getValue();
+		FormatConverter converter = formatMap.get(comboFormat.getValue());
+		FrameAnalytics.Key key = null;
+		long size = 0, modified = 0;
+		if (input instanceof FileSource && inputFile != null && w != null && w > 0 && h != null && h > 0 && isFullFrameSupported(converter.frameSize(w, h), w, h)) {
+			try {
+				key = new FrameAnalytics.Key(input, converter, comboFormat.getValue(), w, h);
+				size = input.size();
+				modified = inputFile.lastModified();
+				
+			} catch (IOException e) {
+				//input closed, no analytics
+			}
+		}
+		FrameAnalytics previous = analytics;
+		boolean isSame = Objects.equals(key, previous == null ? null : previous.key);
+		boolean isGrown = isSame && previous != null && checkFollow.isSelected() && size > previous.size;
+		boolean isChanged = isSame && previous != null && isGrown == false 
+				&& (size != previous.size || checkFollow.isSelected() == false && modified != previous.modified);
+		if (isSame == false || isGrown || isChanged) {
+			if (previous != null) previous.cancel();
+			analytics = key == null ? null : new FrameAnalytics(key, size, modified, Path.of(inputFile.getPath() + ".stats"), isGrown ? previous : null);
+			analyticsStrip.setAnalytics(analytics);
+			analyticsStrip.setVisible(analytics != null);
+			analyticsStrip.setManaged(analytics != null);
+			if (analytics != null) analyticsTimer.play();
+		}
+		analyticsStrip.setCurrent(spinnerFrameIdx.getValue());
+	}
+	
+	//redraw the heat strip while the analysis is running
+	private void refreshAnalytics() {
+		analyticsStrip.redraw();
+		if (analytics == null || analytics.isDone()) analyticsTimer.stop();
+	}
+	
+	//show the next frame with an anomaly in the given direction
+	private void jumpToAnomaly(int direction) {
+		long idx = analytics == null ? -1 : analytics.nextAnomaly(spinnerFrameIdx.getValue(), direction);
+		if (idx >= 0) showFullFrame(idx);
+	}
+	
+	//encode a range of frames into a video file with ffmpeg, a second click stops a running export
+	private void exportVideo(Window owner) {
+		if (exportTask != null && exportTask.isDone() == false) {
+			exportTask.cancel();
+			return;
+		}
+		Integer w = comboWidth.getValue(), h = comboHeight.getValue();
+		String format = comboFormat.getValue();
+		FormatConverter converter = formatMap.get(format);
+		long siz = 0, frameMin = 0, frameCount = 0;
+		if (input != null && w != null && w > 0 && h != null && h > 0 && isFullFrameSupported(converter.frameSize(w, h), w, h)) {
+			siz = converter.frameSize(w, h);
+			frameMin = (input.start() + siz - 1) / siz;
+			try { frameCount = input.size() / siz; } catch (IOException e) {}
+		}
+		if (frameMin >= frameCount) {
+			new Alert(AlertType.ERROR, "No frames to export", ButtonType.OK).showAndWait();
+			return;
+		}
+		
+		//frame range and codec
+		TextField txtFirst = new TextField(String.valueOf(Math.clamp(spinnerFrameIdx.getValue(), frameMin, frameCount - 1)));
+		TextField txtLast = new TextField(String.valueOf(frameCount - 1));
+		ComboBox<String> comboCodec = new ComboBox<>(FXCollections.observableArrayList(VideoExport.CODECS));
+		comboCodec.setValue(prefs.get("codec", VideoExport.CODECS.get(0)));
+		GridPane grid = new GridPane();
+		grid.setHgap(8);
+		grid.setVgap(8);
+		grid.addRow(0, new Label("First frame:"), txtFirst);
+		grid.addRow(1, new Label("Last frame:"), txtLast);
+		grid.addRow(2, new Label("Codec:"), comboCodec);
+		Dialog<ButtonType> dialog = new Dialog<>();
+		dialog.initOwner(owner);
+		dialog.setTitle("Export Video");
+		dialog.setHeaderText("Frames " + frameMin + " to " + (frameCount - 1) + ", " + format + (VideoExport.PIXEL_FORMATS.containsKey(format) ? 
+				" is passed to ffmpeg as it is" : " is converted to bgra for ffmpeg"));
+		dialog.getDialogPane().setContent(grid);
+		dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+		if (dialog.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) return;
+		long first, last;
+		try {
+			first = Long.parseLong(txtFirst.getText().trim());
+			last = Long.parseLong(txtLast.getText().trim());
+			
+		} catch (NumberFormatException e) {
+			first = last = -1;
+		}
+		if (first < frameMin || last < first || last >= frameCount) {
+			new Alert(AlertType.ERROR, "Frames must be within " + frameMin + " and " + (frameCount - 1), ButtonType.OK).showAndWait();
+			return;
+		}
+		String codec = comboCodec.getValue();
+		prefs.put("codec", codec);
+		
+		//output file
+		FileChooser fileChooser = new FileChooser();
+		fileChooser.setTitle("Export Video");
+		fileChooser.setInitialDirectory(new File(inputDirectory));
+		String name = inputFile == null ? "stdin" : inputFile.getName();
+		fileChooser.setInitialFileName(name + switch (codec) {
+			case "ffv1" -> ".mkv";
+			case "prores_ks" -> ".mov";
+			default -> ".mp4";
+		});
+		File file = fileChooser.showSaveDialog(owner);
+		if (file == null) return;
+		
+		//encode in the background, progress is shown next to the button
+		VideoExport export = new VideoExport(new VideoExport.Job(input, converter, format, w, h, comboFps.getValue(), 
+				comboMatrix.getValue(), comboRange.getValue(), first, last - first + 1, codec, file.toPath()));
+		Task<String> task = exportTask = new Task<>() {
+			@Override protected String call() throws Exception {
+				return export.run(this::isCancelled, this::updateMessage);
+			}
+		};
+		lblExport.textProperty().bind(task.messageProperty());
+		btnExport.setText("Stop Export");
+		task.stateProperty().addListener((_, _, state) -> {
+			if (task.isDone() == false) return;
+			lblExport.textProperty().unbind();
+			btnExport.setText("Export");
+			switch (state) {
+				case SUCCEEDED -> lblExport.setText(task.getValue());
+				case CANCELLED -> lblExport.setText("Export stopped");
+				default -> {
+					lblExport.setText("Export failed");
+					new Alert(AlertType.ERROR, "Cannot export: " + task.getException().getMessage(), ButtonType.OK).show();
+				}
+			}
+		});
+		Thread.ofPlatform().name("RawViewer Export").daemon().start(task);
+	}
+	
+	//redraw the thumbnails while they are made
+	private void refreshThumbnails() {
+		thumbnailStrip.redraw();
+		if (thumbnails == null || thumbnails.isDone()) thumbnailTimer.stop();
+	}
+	
+	//open another file shown next to the main image, settings are taken from a y4m header or the main view
+	//a y4m pane is added when its frames have been indexed in the background
+	private void addSyncPane(File file) throws IOException {
+		Path path = file.toPath();
+		if (Y4mSource.isY4m(path)) {
+			Task<Y4mSource> task = indexY4m(path);
+			task.setOnSucceeded(_ -> {
+				Y4mSource y4m = task.getValue();
+				addSyncPane(file.getName(), y4m, y4m.w, y4m.h, y4m.format);
+				startLoader();
+			});
+			
+		} else {
+			addSyncPane(file.getName(), new FileSource(path), comboWidth.getValue(), comboHeight.getValue(), comboFormat.getValue());
+		}
+	}
+	
+	private void addSyncPane(String name, FrameSource paneInput, int w, int h, String format) {
+		SyncPane[] pane = new SyncPane[1];
+		pane[0] = new SyncPane(name, paneInput, formatMap, w, h, format, sizeConverter, this::startLoader, () -> {
+			sync.remove(pane[0]);
+			viewRow.getChildren().remove(pane[0]);
+			pane[0].close();
+		});
+		HBox.setHgrow(pane[0], Priority.ALWAYS);
+		sync.add(pane[0]);
+		viewRow.getChildren().add(pane[0]);
+	}
+	
+	//show the scopes of the most recent frame
+	private void refreshScopes() {
+		VideoScopes.Result result = scopes.take();
+		if (result != null) {
+			VideoScopes.Result old = scopesView.show(result);
+			if (old != null) scopes.recycle(old);
+		}
+	}
+	
+	//read frames from standard input
+	private void openStdin() {
+		try { input.close(); } catch (Exception e) {}
+		input = new StreamSource(() -> System.in, StreamSource.HISTORY_BYTES);
+	}
+	
+	//poll the size of the input while following, the newest frame is shown when selected
+	private void follow() {
+		Integer w = comboWidth.getValue(), h = comboHeight.getValue();
+		FormatConverter converter = formatMap.get(comboFormat.getValue());
+		if (input != null && w != null && w > 0 && h != null && h > 0) {
+			try {
+				long idxMax = input.size() / converter.frameSize(w, h) - 1;
+				if (idxMax > propFrameMax.get()) {
+					propFrameMax.setValue(idxMax);
+					if (checkNewest.isSelected() && (loaderTask.isPlaying == false || loaderTask.isDone())) showFullFrame(idxMax);
+				}
+				
+			} catch (IOException e) {
+				//input was closed, nothing to follow
+			}
+		}
+	}
 
 	//set up the interface
 	@Override
@@ -126,6 +597,22 @@ public class RawViewer extends Application {
 		comboFps.setEditable(true);
 		comboFps.setPrefWidth(70);
 		comboFps.setConverter(new DoubleStringConverter()); //converter must always be provided extra
+		
+		Label lblMatrix = new Label("  Matrix:");
+		comboMatrix = new ComboBox<>(FXCollections.observableArrayList(YuvMatrix.values()));
+		
+		Label lblRange = new Label("  Range:");
+		comboRange = new ComboBox<>(FXCollections.observableArrayList(RANGE_FULL, RANGE_LIMITED));
+		
+		Button btnReference = new Button("Reference");
+		btnReference.setTooltip(new Tooltip("Select a file to compare with, cancel the selection to stop comparing"));
+		Button btnAddPane = new Button("Add Pane");
+		btnAddPane.setTooltip(new Tooltip("Open another file shown side by side, it plays in sync with the main view"));
+		btnExport = new Button("Export");
+		btnExport.setTooltip(new Tooltip("Encode a range of frames into a video file with ffmpeg, click again to stop"));
+		lblExport = new Label();
+		checkDiff = new CheckBox("Diff");
+		checkDiff.setTooltip(new Tooltip("Show the amplified difference to the reference"));
 
 		HBox hboxTop = new HBox(6, 
 				btnOpen, 
@@ -137,7 +624,19 @@ public class RawViewer extends Application {
 				lblFormat, 
 				comboFormat,
 				lblFps,
-				comboFps
+				comboFps,
+				lblMatrix,
+				comboMatrix,
+				lblRange,
+				comboRange,
+				new Separator(Orientation.VERTICAL), 
+				btnReference,
+				checkDiff,
+				new Separator(Orientation.VERTICAL), 
+				btnAddPane,
+				new Separator(Orientation.VERTICAL), 
+				btnExport,
+				lblExport
 				);
 		hboxTop.setAlignment(Pos.CENTER_LEFT);
 		hboxTop.setPadding(new Insets(4));
@@ -145,8 +644,20 @@ public class RawViewer extends Application {
 		//image in center --------------------------
 		imageView = new ImageView();
 		imageView.setPreserveRatio(true);
-		Pane pane = new ImageViewPane(imageView);
+		ImageViewPane pane = imagePane = new ImageViewPane(imageView);
 		pane.setBackground(new Background(new BackgroundFill(Color.BLACK, null, null)));
+		
+		//timing overlay on top of the image
+		lblHud = new Label();
+		lblHud.setFont(Font.font("Monospaced", 12));
+		lblHud.setTextFill(Color.WHITE);
+		lblHud.setBackground(new Background(new BackgroundFill(Color.rgb(0, 0, 0, 0.6), null, null)));
+		lblHud.setPadding(new Insets(4));
+		lblHud.setMouseTransparent(true);
+		lblHud.setVisible(false);
+		StackPane imageStack = new StackPane(pane, lblHud);
+		StackPane.setAlignment(lblHud, Pos.TOP_LEFT);
+		StackPane.setMargin(lblHud, new Insets(8));
 
 		//bottom controls --------------------------
 		
@@ -156,6 +667,28 @@ public class RawViewer extends Application {
 		//pause
 		Button btnPause = makeIconButton(svgPause);
 		
+		//reduce resolution during playback
+		checkAdaptive = new CheckBox("Adaptive");
+		checkAdaptive.setTooltip(new Tooltip("Convert frames at reduced resolution during playback to keep up with the frame rate"));
+		
+		//timing overlay
+		checkHud = new CheckBox("HUD");
+		checkHud.setTooltip(new Tooltip("Show frame rate and timing of read, convert, upload and display during playback"));
+		checkScopes = new CheckBox("Scopes");
+		checkScopes.setTooltip(new Tooltip("Show histogram, waveform and vectorscope computed from the raw data"));
+		checkHud.selectedProperty().addListener((_, _, selected) -> {
+			lblHud.setVisible(selected);
+			if (selected) hudTimer.play();
+			else hudTimer.stop();
+		});
+		
+		//watch the input for new frames
+		checkFollow = new CheckBox("Follow");
+		checkFollow.setTooltip(new Tooltip("Watch the input for frames that are appended while viewing"));
+		checkNewest = new CheckBox("Newest");
+		checkNewest.setTooltip(new Tooltip("Show each new frame as soon as it has arrived"));
+		checkNewest.disableProperty().bind(checkFollow.selectedProperty().not());
+		
 		//frame index spinner
 		SpinnerValueFactory.IntegerSpinnerValueFactory svf = new SpinnerValueFactory.IntegerSpinnerValueFactory(0, 1, 0, 1);
 		svf.maxProperty().bind(propFrameMax);
@@ -197,28 +730,85 @@ public class RawViewer extends Application {
 		Label lblFrameMax = new Label("9999");
 		lblFrameMax.setPrefWidth(40);
 		lblFrameMax.textProperty().bind(propFrameMax.asString());
+		lblStatus = new Label();
+		
+		//navigation between black, flat and repeated frames and scene cuts
+		Button btnPrevAnomaly = new Button("\u25C0");
+		btnPrevAnomaly.setTooltip(new Tooltip("Previous black, flat or repeated frame or scene cut"));
+		Button btnNextAnomaly = new Button("\u25B6");
+		btnNextAnomaly.setTooltip(new Tooltip("Next black, flat or repeated frame or scene cut"));
+		lblStatus.setPrefWidth(230);
 
 		//hbox on bottom of window
 		HBox hboxBottom = new HBox(6, 
 				btnPlay, 
 				btnPause, 
+				checkAdaptive,
+				checkHud,
+				checkScopes,
+				checkFollow,
+				checkNewest,
 				new Separator(Orientation.VERTICAL), 
 				lblFrame, 
 				spinnerFrameIdx, 
 				lblFrameMin, 
 				frameSlider, 
-				lblFrameMax
+				lblFrameMax,
+				btnPrevAnomaly,
+				btnNextAnomaly,
+				new Separator(Orientation.VERTICAL), 
+				lblStatus
 				);
 		hboxBottom.setAlignment(Pos.CENTER_LEFT);
 		hboxBottom.setPadding(new Insets(4));
 		HBox.setHgrow(frameSlider, Priority.ALWAYS);
 
+		//metrics of each frame when comparing
+		metricStrip = new MetricStrip(28);
+		metricStrip.setVisible(false);
+		metricStrip.setManaged(false);
+		Pane stripPane = new Pane(metricStrip);
+		metricStrip.widthProperty().bind(stripPane.widthProperty());
+		metricStrip.managedProperty().addListener((_, _, managed) -> stripPane.setManaged(managed));
+		stripPane.setManaged(false);
+
+		//luma analysis along the slider
+		analyticsStrip = new AnalyticsStrip(14);
+		analyticsStrip.setVisible(false);
+		analyticsStrip.setManaged(false);
+		Pane analyticsPane = new Pane(analyticsStrip);
+		analyticsStrip.widthProperty().bind(analyticsPane.widthProperty());
+		analyticsStrip.managedProperty().addListener((_, _, managed) -> analyticsPane.setManaged(managed));
+		analyticsPane.setManaged(false);
+		
+		//thumbnails above the slider
+		thumbnailStrip = new ThumbnailStrip();
+		Pane thumbnailPane = new Pane(thumbnailStrip);
+		thumbnailStrip.widthProperty().bind(thumbnailPane.widthProperty());
+		thumbnailStrip.setVisible(false);
+		thumbnailStrip.setManaged(false);
+		thumbnailStrip.managedProperty().addListener((_, _, managed) -> thumbnailPane.setManaged(managed));
+		thumbnailPane.setManaged(false);
+
+		//scopes below the image
+		scopesView = new ScopesView(180);
+		scopesView.setVisible(false);
+		scopesView.setManaged(false);
+		Pane scopesPane = new Pane(scopesView);
+		scopesView.widthProperty().bind(scopesPane.widthProperty());
+		scopesView.managedProperty().addListener((_, _, managed) -> scopesPane.setManaged(managed));
+		scopesPane.setManaged(false);
+
 		//main vbox
-		VBox mainPane = new VBox(hboxTop, pane, hboxBottom);
-		VBox.setVgrow(pane, Priority.ALWAYS);
+		imageStack.setMinWidth(0);
+		imageStack.setPrefWidth(0);
+		HBox.setHgrow(imageStack, Priority.ALWAYS);
+		viewRow = new HBox(2, imageStack);
+		VBox mainPane = new VBox(hboxTop, viewRow, scopesPane, stripPane, thumbnailPane, analyticsPane, hboxBottom);
+		VBox.setVgrow(viewRow, Priority.ALWAYS);
 
 		//converter for editable combo box
-		IntegerStringConverter widthHeightInputConverter = new IntegerStringConverter() {
+		IntegerStringConverter widthHeightInputConverter = sizeConverter = new IntegerStringConverter() {
 			@Override public Integer fromString(String value) {
 				Integer i = Integer.valueOf(value);
 				if (i > 0 && i < 65536) return i;
@@ -231,13 +821,18 @@ public class RawViewer extends Application {
 		comboHeight.setConverter(widthHeightInputConverter);
 		
 		//read preferences
-		double minWidth = 650.0;
+		double minWidth = 1080.0;
 		double minHeight = 450.0;
 		inputDirectory = prefs.get("folder", System.getProperty("user.home", "."));
 		comboWidth.setValue(prefs.getInt("width", 1920));
 		comboHeight.setValue(prefs.getInt("height", 1080));
 		comboFormat.setValue(prefs.get("format", "Y"));
 		comboFps.setValue(prefs.getDouble("fps", 25.0));
+		comboMatrix.setValue(YuvMatrix.valueOf(prefs.get("matrix", YuvMatrix.BT601.name())));
+		comboRange.setValue(prefs.get("range", RANGE_FULL));
+		checkAdaptive.setSelected(prefs.getBoolean("adaptive", true));
+		checkFollow.setSelected(prefs.getBoolean("follow", false));
+		checkNewest.setSelected(prefs.getBoolean("newest", false));
 		stage.setX(prefs.getDouble("posx", 50));
 		stage.setY(prefs.getDouble("posy", 50));
 		stage.setWidth(prefs.getDouble("width", minWidth));
@@ -250,6 +845,11 @@ public class RawViewer extends Application {
 			prefs.putInt("height", comboHeight.getValue());
 			prefs.put("format", comboFormat.getValue());
 			prefs.putDouble("fps", comboFps.getValue());
+			prefs.put("matrix", comboMatrix.getValue().name());
+			prefs.put("range", comboRange.getValue());
+			prefs.putBoolean("adaptive", checkAdaptive.isSelected());
+			prefs.putBoolean("follow", checkFollow.isSelected());
+			prefs.putBoolean("newest", checkNewest.isSelected());
 			prefs.putDouble("posx", stage.getX());
 			prefs.putDouble("posy", stage.getY());
 			prefs.putDouble("width", stage.getWidth());
@@ -275,10 +875,8 @@ public class RawViewer extends Application {
 			fileChooser.getExtensionFilters().add(new ExtensionFilter("All Files", "*.*"));
 			File selectedFile = fileChooser.showOpenDialog(stage.getOwner());
 			if (selectedFile != null) {
-				try { input.close(); } catch (Exception e) {}
-				inputFile = selectedFile;
 				try {
-					input = new RandomAccessFile(inputFile, "r");
+					openInput(selectedFile);
 					inputDirectory = inputFile.getParentFile().getAbsolutePath();
 					stage.setTitle("RawViewer - " + selectedFile);
 					startLoader();
@@ -298,10 +896,8 @@ public class RawViewer extends Application {
 			Dragboard db = dragEvent.getDragboard();
 			List<File> files = db.getFiles();
 			if (files.isEmpty() == false) {
-				try { input.close(); } catch (Exception e) {}
-				inputFile = files.get(0);
 				try {
-					input = new RandomAccessFile(inputFile, "r");
+					openInput(files.get(0));
 					inputDirectory = inputFile.getParentFile().getAbsolutePath();
 					stage.setTitle("RawViewer - " + inputFile);
 					startLoader();
@@ -316,28 +912,107 @@ public class RawViewer extends Application {
 		});
 		
 		//button actions
-		btnReload.setOnAction(_ -> startLoader());
+		btnReload.setOnAction(_ -> {
+			tileCache = null;
+			startLoader();
+		});
 		comboWidth.setOnAction(_ -> startLoader());
 		comboHeight.setOnAction(_ -> startLoader());
 		comboFormat.setOnAction(_ -> startLoader());
 		comboFps.setOnAction(_ -> startLoader());
+		comboMatrix.setOnAction(_ -> startLoader());
+		comboRange.setOnAction(_ -> startLoader());
 		spinnerFrameIdx.valueProperty().addListener(_ -> startLoader());
 		
-		//scrolling on the image
+		//scrolling on the image moves through frames, zooms with ctrl pressed
 		pane.setOnScroll(e -> {
 			int delta = e.getDeltaY() < 0 ? -1 : 1;
-			svf.increment(delta);
+			if (e.isControlDown()) pane.zoom(delta, e.getX(), e.getY());
+			else svf.increment(delta);
+		});
+		
+		//reload still frames when zooming or panning, playback continues with the whole frame
+		pane.setOnViewChanged(() -> {
+			if (loaderTask.isPlaying == false || loaderTask.isDone()) startLoader();
 		});
 		
 		//playing
 		btnPlay.setOnAction(_ -> startLoader(true));
-		btnPause.setOnAction(_ -> loaderTask.cancel(false));
+		btnPause.setOnAction(_ -> pause());
+		
+		//comparing
+		btnReference.setOnAction(_ -> {
+			FileChooser fileChooser = new FileChooser();
+			fileChooser.setTitle("Select Reference File");
+			fileChooser.setInitialDirectory(new File(inputDirectory));
+			try {
+				openReference(fileChooser.showOpenDialog(stage.getOwner()));
+				
+			} catch (IOException e) {
+				new Alert(AlertType.ERROR, "Cannot open file: " + e.getMessage(), ButtonType.OK).showAndWait();
+			}
+			startLoader();
+		});
+		checkDiff.setOnAction(_ -> startLoader());
+		btnAddPane.setOnAction(_ -> {
+			FileChooser fileChooser = new FileChooser();
+			fileChooser.setTitle("Open File in New Pane");
+			fileChooser.setInitialDirectory(new File(inputDirectory));
+			File file = fileChooser.showOpenDialog(stage.getOwner());
+			if (file == null) return;
+			try {
+				addSyncPane(file);
+				
+			} catch (IOException e) {
+				new Alert(AlertType.ERROR, "Cannot open file: " + e.getMessage(), ButtonType.OK).showAndWait();
+			}
+			startLoader();
+		});
+		metricStrip.setOnSelect(this::showFullFrame);
+		thumbnailStrip.setOnSelect(this::showFullFrame);
+		analyticsStrip.setOnSelect(this::showFullFrame);
+		btnPrevAnomaly.setOnAction(_ -> jumpToAnomaly(-1));
+		btnExport.setOnAction(_ -> exportVideo(stage));
+		btnNextAnomaly.setOnAction(_ -> jumpToAnomaly(1));
+		stripTimer.setCycleCount(Animation.INDEFINITE);
+		thumbnailTimer.setCycleCount(Animation.INDEFINITE);
+		analyticsTimer.setCycleCount(Animation.INDEFINITE);
+		hudTimer.setCycleCount(Animation.INDEFINITE);
+		scopesTimer.setCycleCount(Animation.INDEFINITE);
+		
+		//scopes are computed while shown
+		checkScopes.selectedProperty().addListener((_, _, selected) -> {
+			scopes.setEnabled(selected);
+			scopesView.setVisible(selected);
+			scopesView.setManaged(selected);
+			if (selected) scopesTimer.play();
+			else scopesTimer.stop();
+			if (selected && loaderTask.isPlaying == false) startLoader();
+		});
+		
+		//following
+		followTimer.setCycleCount(Animation.INDEFINITE);
+		checkFollow.selectedProperty().addListener((_, _, selected) -> {
+			if (selected) followTimer.play();
+			else followTimer.stop();
+		});
+		if (checkFollow.isSelected()) followTimer.play();
 		
-		//load file when cmd argument is given
-		if (args.length > 0) {
-			inputFile = new File(args[0]);
-			stage.setTitle("RawViewer - " + inputFile);
+		//load file when cmd argument is given, '-' reads from standard input
+		if (args.length > 0 && args[0].equals("-")) {
+			openStdin();
+			stage.setTitle("RawViewer - stdin");
 			startLoader();
+			
+		} else if (args.length > 0) {
+			try {
+				openInput(new File(args[0]));
+				stage.setTitle("RawViewer - " + inputFile);
+				startLoader();
+				
+			} catch (IOException e) {
+				new Alert(AlertType.ERROR, "Cannot open file: " + e.getMessage(), ButtonType.OK).showAndWait();
+			}
 		}
 	}
 
@@ -359,21 +1034,53 @@ public class RawViewer extends Application {
 		return btn;
 	}
 
+	//formats from all providers found by ServiceLoader, vector implementations are used when available
+	//standard formats are always present, also when started from the class path without module information
+	static Map<String, FormatConverter> loadFormats() {
+		Map<String, FormatConverter> formats = new HashMap<>(new StandardFormats().formats());
+		for (FormatProvider provider : ServiceLoader.load(FormatProvider.class)) {
+			provider.formats().forEach(formats::putIfAbsent);
+		}
+		formats.replaceAll((_, converter) -> ConverterSelector.select(converter));
+		return formats;
+	}
+	
+	//frames are converted as a whole when raw data fits into an array and pixels fit into a direct buffer
+	static boolean isFullFrameSupported(long frameSize, int w, int h) {
+		return frameSize <= MAX_FRAME_BYTES && (long) w * h <= MAX_FRAME_BYTES / 4;
+	}
+	
+	//positional read of one frame, does not depend on a shared file pointer
+	static void readFully(FileChannel input, byte[] buffer, long position, int siz) throws IOException {
+		ByteBuffer bb = ByteBuffer.wrap(buffer, 0, siz);
+		while (bb.hasRemaining() && input.read(bb, position + bb.position()) >= 0) {}
+	}
+
 	//nested class to async load data
 	class LoaderTask extends Task<Void> {
 		
 		private FormatConverter converter;
-		private RandomAccessFile input;
+		private YuvTable yuv;
+		private FrameSource input;
 		private ImageView imageView;
 		private Integer w, h;
 		private long idx, idxMax, nanosPerFrame;
-		private final byte[] buffer;
-		private final byte[] dest;
+		private DisplayTargets targets;
+		private ResolutionController resolution;
+		private ViewRegion region;
+		private TileCache tiles;
+		private FrameSource reference;
+		private IntBuffer referencePixels;
+		private FrameComparison comparison;
+		private FrameAnalytics analytics;
+		private byte[] buffer;
+		private volatile long idxShown = -1;
 		
 		public final boolean isPlaying;
 		
 		LoaderTask(boolean play) {
 			this.converter = formatMap.get(comboFormat.getValue());
+			this.yuv = new YuvTable(comboMatrix.getValue(), comboRange.getValue().equals(RANGE_LIMITED));
 			this.input = RawViewer.this.input;
 			this.imageView = RawViewer.this.imageView;
 			this.w = comboWidth.getValue();
@@ -382,12 +1089,44 @@ public class RawViewer extends Application {
 			double fps = comboFps.getValue();
 			this.nanosPerFrame = (long) (1e9 / fps);
 			this.isPlaying = play;
-			buffer = new byte[w * h * 4];
-			dest = new byte[w * h * 4];
+			this.reference = checkDiff.isSelected() ? RawViewer.this.reference : null;
+			this.comparison = RawViewer.this.comparison;
+			this.analytics = RawViewer.this.analytics;
+			
+			//images to show are reused as long as the frame size does not change
+			if (w != null && w > 0 && h != null && h > 0) {
+				Window window = imageView.getScene() == null ? null : imageView.getScene().getWindow();
+				double scale = window == null ? 1.0 : window.getOutputScaleX();
+				imagePane.setFrameSize(w, h);
+				
+				//zoomed still frames and frames too large for one image are composed from tiles of the region on screen
+				if (isFullFrameSupported(converter.frameSize(w, h), w, h) == false || imagePane.isZoomed() && play == false) {
+					this.region = imagePane.viewRegion(scale);
+					if (regionTargets == null || regionTargets.hasSize(region.width(), region.height()) == false) {
+						regionTargets = new DisplayTargets(region.width(), region.height());
+					}
+					this.targets = regionTargets;
+					TileCache.Source source = new TileCache.Source(input, converter, w, h, comboMatrix.getValue(), comboRange.getValue());
+					if (tileCache == null || tileCache.hasSource(source) == false) tileCache = new TileCache(source);
+					this.tiles = tileCache;
+					
+				} else {
+					if (displayTargets == null || displayTargets.hasSize(w, h) == false) displayTargets = new DisplayTargets(w, h);
+					this.targets = displayTargets;
+					if (reference != null && (RawViewer.this.referencePixels == null || RawViewer.this.referencePixels.capacity() != w * h)) {
+						RawViewer.this.referencePixels = DisplayTarget.allocatePixels(w, h);
+					}
+					this.referencePixels = RawViewer.this.referencePixels;
+				}
+				
+				//viewport size in device pixels
+				this.resolution = new ResolutionController(checkAdaptive.isSelected(), w, h, 
+						imageView.getFitWidth() * scale, imageView.getFitHeight() * scale, nanosPerFrame);
+			}
 			
 			//determine number of frames in input file
 			long frameCount = 0;
-			try { frameCount = input.length() / converter.frameSize(w, h); } catch (Exception e) {}
+			try { frameCount = input.size() / converter.frameSize(w, h); } catch (Exception e) {}
 			
 			//set max frame index into UI
 			idxMax = frameCount - 1;
@@ -397,184 +1136,3418 @@ public class RawViewer extends Application {
 		
 		LoaderTask() {
 			this.isPlaying = false;
-			this.buffer = null;
-			this.dest = null;
 		}
 		
 		@Override
 		protected Void call() throws Exception {
-			if (!isCancelled() && input != null && input.length() > 0 && imageView != null && w != null && w > 0 && h != null && h > 0 && idx >= 0 && idx <= idxMax) {
+			if (!isCancelled() && input != null && input.size() > 0 && imageView != null && w != null && w > 0 && h != null && h > 0 && idx >= 0 && idx <= idxMax) {
 				//System.out.println("loading...");
-				WritableImage image = new WritableImage(w, h);
-				int siz = converter.frameSize(w, h);
-				if (!isCancelled()) {
-					input.seek(siz * idx);
-					input.read(buffer, 0, siz);
-					converter.convert(w, h, buffer, dest);
-				}
-				if (!isCancelled()) {
-					image.getPixelWriter().setPixels(0, 0, w, h, PixelFormat.getByteBgraInstance(), dest, 0, w * 4);
+				long siz = converter.frameSize(w, h);
+				if (siz * idx < input.start()) {
+					updateMessage("frame is no longer in history");
+					return null;
 				}
-				if (!isCancelled()) {
-					Platform.runLater(() -> imageView.setImage(image));
+				DisplayTarget target = targets.take(this::isCancelled);
+				if (target == null) return null;
+				SyncGroup.Frame panes = sync.start(idx, yuv, 1);
+				boolean isShown = false;
+				try {
+					if (region != null && !isCancelled()) {
+						MemorySegment frame = input.segment(siz * idx, siz);
+						if (scopes.isEnabled()) scopes.compute(converter, w, h, frame, yuv);
+						int converted = tiles.compose(converter, yuv, w, h, idx, frame, region, target.pixels, this::isCancelled);
+						updateMessage(String.format("%d tiles converted, %d cached", converted, tiles.size()));
+						
+					} else if (!isCancelled()) {
+						buffer = new byte[(int) siz];
+						readFrame(siz * idx, (int) siz);
+						converter.convert(w, h, buffer, target.pixels, yuv);
+						if (scopes.isEnabled()) scopes.compute(converter, w, h, MemorySegment.ofArray(buffer), yuv);
+						if (reference != null && siz * (idx + 1) <= reference.size()) {
+							reference.read(buffer, siz * idx, (int) siz);
+							converter.convert(w, h, buffer, referencePixels, yuv);
+							FrameComparison.difference(target.pixels, referencePixels, target.pixels, w * h);
+						}
+						if (comparison != null) updateMessage(comparison.describe(idx));
+						else if (analytics != null) updateMessage(analytics.describe(idx));
+					}
+					panes.await();
+					if (!isCancelled()) {
+						boolean smooth = region == null || region.smooth();
+						Platform.runLater(() -> {
+							imageView.setSmooth(smooth);
+							targets.show(target, imageView);
+							panes.show();
+						});
+						isShown = true;
+					}
+					
+				} finally {
+					if (isShown == false) {
+						targets.release(target);
+						panes.release();
+					}
 				}
 				
-				while (isPlaying && idx < idxMax && isCancelled() == false) {
-					long nextTime = System.nanoTime() + nanosPerFrame; //wait for next frame to show
-					idx++;
-					input.seek(siz * idx);
-					input.read(buffer, 0, siz);
-					converter.convert(w, h, buffer, dest);
-					image.getPixelWriter().setPixels(0, 0, w, h, PixelFormat.getByteBgraInstance(), dest, 0, w * 4);
-					while (System.nanoTime() < nextTime) {}
-					Platform.runLater(() -> imageView.setImage(image));
+				//play frames in a pipeline of parallel stages
+				if (isPlaying && region == null && idx < idxMax && isCancelled() == false) {
+					PlaybackPipeline pipeline = new PlaybackPipeline(input, converter, yuv, targets, imageView, idx, idxMax, nanosPerFrame, resolution, timings, sync, scopes);
+					pipeline.play(this::isCancelled, this::updateMessage, i -> idxShown = i);
 				}
 			}
 			return null;
 		}
 		
+		private void readFrame(long position, int siz) throws IOException {
+			input.read(buffer, position, siz);
+		}
+		
+		//index of the last frame shown during playback, -1 when no frame was played
+		long getIdxShown() {
+			return idxShown;
+		}
+		
+		//playback reached the end, show the last frame in full resolution
+		@Override
+		protected void succeeded() {
+			if (isPlaying) showFullFrame(idxShown);
+		}
+		
 		@Override
 		protected void failed() {
 			Throwable e = getException();
-			if (e != null) e.printStackTrace();
+			if (e != null && e instanceof ClosedChannelException == false && e instanceof HistoryException == false) e.printStackTrace();
 		}
 	}
-}
-
-
-//subclass of Pane to always center an ImageView
-class ImageViewPane extends Pane {
 	
-	private ImageView imageView;
+	//service interface for pixel formats, providers are looked up with ServiceLoader
+	//other modules add formats by declaring 'provides application.RawViewer.FormatProvider with ...'
+	public interface FormatProvider {
+		
+		//converters by format name
+		Map<String, FormatConverter> formats();
+	}
 	
-	ImageViewPane(ImageView imageView) {
-		super(imageView);
-		this.imageView = imageView;
+	//formats that come with RawViewer
+	public static class StandardFormats implements FormatProvider {
+		
+		//needed by the service loader
+		public StandardFormats() {}
+		
+		@Override
+		public Map<String, FormatConverter> formats() {
+			return Map.ofEntries(
+					Map.entry("Y", new FormatConverterY()), 
+					Map.entry("YUV420", new FormatConverterYUV420()), 
+					Map.entry("YUV444", new FormatConverterYUV444()), 
+					Map.entry("RGB24", new FormatConverterRGB24()),
+					Map.entry("BGR24", new FormatConverterBGR24()),
+					Map.entry("NV12", new FormatConverterNV12()),
+					Map.entry("NV21", new FormatConverterNV21()),
+					Map.entry("P010", new FormatConverterP010()),
+					Map.entry("YUV422P10", new FormatConverterYUV422P10()),
+					Map.entry("UYVY", new FormatConverterUYVY()),
+					Map.entry("YUYV", new FormatConverterYUYV()),
+					Map.entry("GRAY16", new FormatConverterGray16()),
+					Map.entry("BayerRGGB", new FormatConverterBayerRGGB())
+					);
+		}
 	}
 	
-	@Override
-	protected void layoutChildren() {
-		imageView.setFitWidth(getWidth());
-		imageView.setFitHeight(getHeight());
-		imageView.setLayoutX((getWidth() - imageView.prefWidth(getHeight())) / 2.0);
-		imageView.setLayoutY((getHeight() - imageView.prefHeight(getWidth())) / 2.0);
-		super.layoutChildren();
+	//convert input data to argb pixels, public to let other modules provide formats
+	public interface FormatConverter {
+		
+		//convert one frame of raw data to argb and store into dest, bands of rows are converted in parallel
+		default void convert(int w, int h, byte[] buffer, IntBuffer dest, YuvTable yuv) {
+			ConverterPool.convert(this, w, h, buffer, dest, yuv);
+		}
+		
+		//convert rows from r0 inclusive to r1 exclusive
+		public void convertRows(int w, int h, byte[] buffer, IntBuffer dest, int r0, int r1, YuvTable yuv);
+		
+		//boundaries between bands of rows must be a multiple of this value
+		default int rowAlignment() {
+			return 1;
+		}
+		
+		//compute the framesize in bytes, may exceed the size of an array for very large frames
+		public long frameSize(int w, int h);
+		
+		//argb value of the single pixel at column x and row y, frame may be on heap or off heap
+		public int sample(int w, int h, MemorySegment frame, int x, int y, YuvTable yuv);
+		
+		//where the components are stored in a raw frame, used to analyse the raw data without converting it
+		//null when the components cannot be addressed separately, analysis then uses sample()
+		default RawLayout layout(int w, int h) {
+			return null;
+		}
+		
+		//components in yuv or rgb order, the chroma planes are null for gray formats
+		public record RawLayout(boolean isRgb, Plane c0, Plane c1, Plane c2) {}
+		
+		//one component, the sample at column x and row y is at offset + (y >> yShift) * rowStride + (x >> xShift) * pixelStride
+		//wide samples are 16 bit little endian, shift reduces samples to 8 bits, larger values are clipped
+		public record Plane(long offset, int pixelStride, long rowStride, int xShift, int yShift, boolean wide, int shift) {
+			
+			public static Plane u8(long offset, int pixelStride, long rowStride, int xShift, int yShift) {
+				return new Plane(offset, pixelStride, rowStride, xShift, yShift, false, 0);
+			}
+			
+			public static Plane u16(long offset, int pixelStride, long rowStride, int xShift, int yShift, int shift) {
+				return new Plane(offset, pixelStride, rowStride, xShift, yShift, true, shift);
+			}
+			
+			//8 bit value of the sample at column x and row y
+			public int get(MemorySegment frame, int x, int y) {
+				return get(frame, row(y), x);
+			}
+			
+			//position of row y, samples of a row are read with get(frame, row, x)
+			public long row(int y) {
+				return offset + (y >> yShift) * rowStride;
+			}
+			
+			public int get(MemorySegment frame, long row, int x) {
+				long position = row + (long) (x >> xShift) * pixelStride;
+				return wide ? Math.min(LittleEndian16.get(frame, position) >> shift, 255) : FormatConverter.u8(frame, position);
+			}
+		}
+		
+		//convert only every step-th pixel of every step-th row, dest receives decimatedSize(w, step) x decimatedSize(h, step) pixels
+		default void convertDecimated(int w, int h, byte[] buffer, IntBuffer dest, int step, YuvTable yuv) {
+			int dw = decimatedSize(w, step);
+			int dh = decimatedSize(h, step);
+			MemorySegment frame = MemorySegment.ofArray(buffer);
+			ConverterPool.forEachBand(dw, dh, 1, (r0, r1) -> {
+				for (int r = r0; r < r1; r++) {
+					for (int c = 0; c < dw; c++) {
+						dest.put(r * dw + c, sample(w, h, frame, c * step, r * step, yuv));
+					}
+				}
+			});
+		}
+		
+		static int decimatedSize(int size, int step) {
+			return (size + step - 1) / step;
+		}
+		
+		//unsigned byte at the given offset
+		static int u8(MemorySegment frame, long offset) {
+			return frame.get(ValueLayout.JAVA_BYTE, offset) & 255;
+		}
+	}
+		
+	//yuv to rgb conversion in integer fixed point, one lookup table per component
+	//a color channel is computed as clip((yTab[y] + chroma terms) >> SHIFT)
+	public static final class YuvTable {
+		
+		public static final int SHIFT = 16;
+		
+		public final int yOffset, yMul, crMul, cguMul, cgvMul, cbMul;
+		final YuvMatrix matrix;
+		public final int[] yTab = new int[256];	//luma including rounding offset
+		public final int[] crTab = new int[256];	//v contribution to red
+		public final int[] cguTab = new int[256];	//u contribution subtracted from green
+		public final int[] cgvTab = new int[256];	//v contribution subtracted from green
+		public final int[] cbTab = new int[256];	//u contribution to blue
+		
+		YuvTable(YuvMatrix matrix, boolean limitedRange) {
+			double kr = matrix.kr, kb = matrix.kb, kg = 1.0 - kr - kb;
+			this.matrix = matrix;
+			double ys = limitedRange ? 255.0 / 219.0 : 1.0;
+			double cs = limitedRange ? 255.0 / 224.0 : 1.0;
+			double one = 1 << SHIFT;
+			yOffset = limitedRange ? 16 : 0;
+			yMul = (int) Math.round(ys * one);
+			crMul = (int) Math.round(2.0 * (1.0 - kr) * cs * one);
+			cguMul = (int) Math.round(2.0 * kb * (1.0 - kb) / kg * cs * one);
+			cgvMul = (int) Math.round(2.0 * kr * (1.0 - kr) / kg * cs * one);
+			cbMul = (int) Math.round(2.0 * (1.0 - kb) * cs * one);
+			for (int i = 0; i < 256; i++) {
+				yTab[i] = (i - yOffset) * yMul + (1 << (SHIFT - 1));
+				crTab[i] = (i - 128) * crMul;
+				cguTab[i] = (i - 128) * cguMul;
+				cgvTab[i] = (i - 128) * cgvMul;
+				cbTab[i] = (i - 128) * cbMul;
+			}
+		}
+		
+		//store one argb pixel from the luma table value and the chroma terms
+		public static void put(int y, int cr, int cg, int cb, IntBuffer dest, int pixelOffset) {
+			dest.put(pixelOffset, argb(y, cr, cg, cb));
+		}
+		
+		public static int argb(int y, int cr, int cg, int cb) {
+			int b = clip((y + cb) >> SHIFT);
+			int g = clip((y - cg) >> SHIFT);
+			int r = clip((y + cr) >> SHIFT);
+			return 0xFF000000 | r << 16 | g << 8 | b;
+		}
+		
+		//argb value of one pixel from unsigned yuv values
+		public int argb(int y, int u, int v) {
+			return argb(yTab[y], crTab[v], cguTab[u] + cgvTab[v], cbTab[u]);
+		}
+		
+		public static int clip(int value) {
+			return Math.min(Math.max(value, 0), 255);
+		}
 	}
 }
 
-//convert input data to bgra buffer 
-interface FormatConverter {
-	
-	//read from input file frame number idx, convert to bgra and store into dest
-	public void convert(Integer w, Integer h, byte[] buffer, byte[] dest) throws IOException;
+
+//raw data that frames are read from, a file with random access or a stream that keeps a bounded history
+interface FrameSource extends Closeable {
 	
-	//compute the framesize in bytes
-	public int frameSize(int w, int h);
+	//number of bytes available so far
+	long size() throws IOException;
 	
-	//input in range 0..255
-	default void yuvToRgb(float y, float u, float v, byte[] dest, int pixelOffset) {
-		double r = Math.rint(Math.clamp(y + (1.370705f * (v - 128.0f)), 0.0f, 255.0f));
-		double g = Math.rint(Math.clamp(y - (0.337633f * (u - 128.0f)) - (0.698001f * (v - 128.0f)), 0.0f, 255.0f));
-		double b = Math.rint(Math.clamp(y + (1.732446f * (u - 128.0f)), 0.0f, 255.0f));
-		int offset = pixelOffset * 4;
-		dest[offset + 0] = (byte) b;
-		dest[offset + 1] = (byte) g;
-		dest[offset + 2] = (byte) r;
-		dest[offset + 3] = (byte) 255;
+	//position of the first byte that can still be read
+	default long start() {
+		return 0;
 	}
 	
-	//input in range 0..255
-	default void yuvToRgb(byte y, byte u, byte v, byte[] dest, int offset) {
-		float fy = y & 255;
-		float fu = u & 255;
-		float fv = v & 255;
-		yuvToRgb(fy, fu, fv, dest, offset);
+	//read length bytes at the given position into the start of buffer
+	void read(byte[] buffer, long position, int length) throws IOException;
+	
+	//frame data at the given position, sources that can map their data avoid the copy
+	default MemorySegment segment(long position, long length) throws IOException {
+		byte[] buffer = new byte[Math.toIntExact(length)];
+		read(buffer, position, buffer.length);
+		return MemorySegment.ofArray(buffer);
 	}
 }
 
-class FormatConverterY implements FormatConverter {
-
+//regular file, frames are read at any position
+class FileSource implements FrameSource {
+	
+	final FileChannel channel;
+	private MemorySegment map;
+	
+	FileSource(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+	}
+	
 	@Override
-	public void convert(Integer w, Integer h, byte[] buffer, byte[] dest) throws IOException {
-		for (int r = 0; r < h; r++) {
-			for (int c = 0; c < w; c++) {
-				int i = r * w + c;
-				float y = buffer[i] & 255;
-				yuvToRgb(y, 128.0f, 128.0f, dest, i);
-			}
-		}
+	public long size() throws IOException {
+		return channel.size();
 	}
-
+	
 	@Override
-	public int frameSize(int w, int h) {
-		return w * h;
+	public void read(byte[] buffer, long position, int length) throws IOException {
+		RawViewer.readFully(channel, buffer, position, length);
 	}
 	
-}
-
-class FormatConverterYUV420 implements FormatConverter {
-
+	//the whole file is mapped off heap, the mapping is renewed when the file has grown
 	@Override
-	public void convert(Integer w, Integer h, byte[] buffer, byte[] dest) throws IOException {
-		for (int r = 0; r < h; r++) {
-			for (int c = 0; c < w; c++) {
-				int rr = r / 2;
-				int cc = c / 2;
-				int offset = r * w + c;
-				byte y = buffer[offset];
-				int i = h * w + rr * w / 2 + cc;
-				byte u = buffer[i];
-				i += h * w / 4;
-				byte v = buffer[i];
-				yuvToRgb(y, u, v, dest, offset);
-			}
+	public synchronized MemorySegment segment(long position, long length) throws IOException {
+		if (map == null || map.byteSize() < position + length) {
+			map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), Arena.ofAuto());
 		}
+		return map.asSlice(position, length);
 	}
-
+	
 	@Override
-	public int frameSize(int w, int h) {
-		return w * h * 3 / 2;
+	public void close() throws IOException {
+		channel.close();
 	}
-	
 }
 
-class FormatConverterYUV444 implements FormatConverter {
-
-	@Override
-	public void convert(Integer w, Integer h, byte[] buffer, byte[] dest) throws IOException {
-		for (int r = 0; r < h; r++) {
-			for (int c = 0; c < w; c++) {
-				int offset = r * w + c;
-				yuvToRgb(buffer[offset], buffer[offset + w * h], buffer[offset + 2 * w * h], dest, offset);
+//sequential input like a named pipe or stdin, received bytes are kept in a ring of chunks
+//only the most recent bytes up to the capacity of the ring can be read
+class StreamSource implements FrameSource {
+	
+	//size of the history in MB is taken from system property rawviewer.history, defaults to 512 MB
+	static final long HISTORY_BYTES = Long.getLong("rawviewer.history", 512) << 20;
+	private static final int CHUNK = 1 << 24;
+	
+	private final byte[][] chunks;
+	private final long capacity;
+	private long size; //guarded by this
+	private volatile InputStream stream;
+	private volatile IOException failure;
+	
+	//the stream is opened on the receiving thread, opening a named pipe blocks until a writer is connected
+	StreamSource(Callable<InputStream> opener, long capacity) {
+		this.chunks = new byte[(int) Math.max((capacity + CHUNK - 1) / CHUNK, 1)][];
+		this.capacity = (long) chunks.length * CHUNK;
+		Thread.ofPlatform().name("RawViewer Stream").daemon().start(() -> receive(opener));
+	}
+	
+	private void receive(Callable<InputStream> opener) {
+		byte[] data = new byte[1 << 16];
+		try (InputStream stream = opener.call()) {
+			this.stream = stream;
+			int n;
+			while ((n = stream.read(data)) >= 0) {
+				append(data, n);
 			}
+			
+		} catch (IOException e) {
+			failure = e;
+			
+		} catch (Exception e) {
+			failure = new IOException(e);
 		}
 	}
-
-	@Override
-	public int frameSize(int w, int h) {
-		return w * h * 3;
-	}
+	
+	private synchronized void append(byte[] data, int length) {
+		for (int off = 0; off < length; ) {
+			int chunk = (int) (size % capacity / CHUNK);
+			int pos = (int) (size % CHUNK);
+			int n = Math.min(length - off, CHUNK - pos);
+			if (chunks[chunk] == null) chunks[chunk] = new byte[CHUNK];
+			System.arraycopy(data, off, chunks[chunk], pos, n);
+			off += n;
+			size += n;
+		}
+	}
+	
+	@Override
+	public synchronized long size() {
+		return size;
+	}
+	
+	@Override
+	public synchronized long start() {
+		return Math.max(size - capacity, 0);
+	}
+	
+	@Override
+	public synchronized void read(byte[] buffer, long position, int length) throws IOException {
+		if (position < start()) throw new HistoryException();
+		if (position + length > size) throw failure != null ? failure : new IOException("frame not yet received");
+		for (int off = 0; off < length; ) {
+			long p = position + off;
+			int chunk = (int) (p % capacity / CHUNK);
+			int pos = (int) (p % CHUNK);
+			int n = Math.min(length - off, CHUNK - pos);
+			System.arraycopy(chunks[chunk], pos, buffer, off, n);
+			off += n;
+		}
+	}
+	
+	//stdin stays open, the receiving thread ends with the application
+	@Override
+	public void close() throws IOException {
+		InputStream stream = this.stream;
+		if (stream != null && stream != System.in) stream.close();
+	}
+}
+
+//frame was dropped from the history of a stream
+class HistoryException extends IOException {
+	
+	private static final long serialVersionUID = 1L;
+	
+	HistoryException() {
+		super("frame is no longer in history");
+	}
+}
+
+//yuv4mpeg2 file, the header holds frame size, frame rate and color space, each frame follows a FRAME line
+//frames are presented as one contiguous block of raw data like a plain raw file
+//offsets of all frames are indexed once and kept in a sidecar file next to the input
+class Y4mSource extends FileSource {
+	
+	private static final byte[] MAGIC = "YUV4MPEG2 ".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] FRAME = "FRAME".getBytes(StandardCharsets.US_ASCII);
+	private static final int MAX_LINE = 1024;
+	private static final int INDEX_VERSION = 1;
+	
+	final int w, h;
+	final double fps;
+	final String format;
+	final String range;		//null when not given in the header
+	private final long frameSize, fileSize;
+	private final long[] offsets;	//position of the data of each frame
+	
+	Y4mSource(Path path, Map<String, FormatConverter> formats) throws IOException {
+		super(path);
+		fileSize = channel.size();
+		String header = readLine(0);
+		if (header == null || header.startsWith("YUV4MPEG2 ") == false) throw new IOException("not a yuv4mpeg2 file");
+		
+		int w = 0, h = 0;
+		double fps = 25.0;
+		String colorSpace = "420jpeg", range = null;
+		for (String token : header.split(" ")) {
+			if (token.isEmpty()) continue;
+			String value = token.substring(1);
+			switch (token.charAt(0)) {
+				case 'W' -> w = Integer.parseInt(value);
+				case 'H' -> h = Integer.parseInt(value);
+				case 'C' -> colorSpace = value;
+				case 'F' -> {
+					String[] ratio = value.split(":");
+					fps = Double.parseDouble(ratio[0]) / Double.parseDouble(ratio[1]);
+				}
+				case 'X' -> {
+					if (value.equalsIgnoreCase("COLORRANGE=FULL")) range = RawViewer.RANGE_FULL;
+					if (value.equalsIgnoreCase("COLORRANGE=LIMITED")) range = RawViewer.RANGE_LIMITED;
+				}
+				default -> {}
+			}
+		}
+		this.format = switch (colorSpace) {
+			case "420jpeg", "420paldv", "420mpeg2", "420" -> "YUV420";
+			case "444" -> "YUV444";
+			case "mono" -> "Y";
+			case "mono16" -> "GRAY16";
+			case "422p10" -> "YUV422P10";
+			default -> throw new IOException("unsupported color space " + colorSpace);
+		};
+		if (w <= 0 || h <= 0) throw new IOException("missing frame size in header");
+		this.w = w;
+		this.h = h;
+		this.fps = fps;
+		this.range = range;
+		this.frameSize = formats.get(format).frameSize(w, h);
+		
+		Path indexPath = Path.of(path + ".idx");
+		long[] index = loadIndex(indexPath, channel.size(), Files.getLastModifiedTime(path).toMillis());
+		if (index == null) {
+			index = buildIndex(header.length() + 1);
+			saveIndex(indexPath, index, Files.getLastModifiedTime(path).toMillis());
+		}
+		this.offsets = index;
+	}
+	
+	static boolean isY4m(Path path) {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer bb = ByteBuffer.allocate(MAGIC.length);
+			while (bb.hasRemaining() && channel.read(bb) >= 0) {}
+			return Arrays.equals(bb.array(), MAGIC);
+			
+		} catch (IOException e) {
+			return false;
+		}
+	}
+	
+	@Override
+	public long size() {
+		return offsets.length * frameSize;
+	}
+	
+	//reads may span several frames
+	@Override
+	public void read(byte[] buffer, long position, int length) throws IOException {
+		for (int off = 0; off < length; ) {
+			long p = position + off;
+			int idx = (int) (p / frameSize);
+			if (idx >= offsets.length) break;
+			long inFrame = p % frameSize;
+			int n = (int) Math.min(length - off, frameSize - inFrame);
+			ByteBuffer bb = ByteBuffer.wrap(buffer, off, n);
+			long filePos = offsets[idx] + inFrame;
+			while (bb.hasRemaining() && channel.read(bb, filePos + bb.position() - off) >= 0) {}
+			off += n;
+		}
+	}
+	
+	@Override
+	public MemorySegment segment(long position, long length) throws IOException {
+		int idx = (int) (position / frameSize);
+		long inFrame = position % frameSize;
+		if (idx < offsets.length && inFrame + length <= frameSize) return super.segment(offsets[idx] + inFrame, length);
+		else return readSegment(position, length);
+	}
+	
+	private MemorySegment readSegment(long position, long length) throws IOException {
+		byte[] buffer = new byte[Math.toIntExact(length)];
+		read(buffer, position, buffer.length);
+		return MemorySegment.ofArray(buffer);
+	}
+	
+	//line starting at position without the line feed, null when there is no complete line
+	private String readLine(long position) throws IOException {
+		ByteBuffer bb = ByteBuffer.allocate(MAX_LINE);
+		while (bb.hasRemaining() && channel.read(bb, position + bb.position()) >= 0) {}
+		byte[] line = bb.array();
+		for (int i = 0; i < bb.position(); i++) {
+			if (line[i] == '\n') return new String(line, 0, i, StandardCharsets.US_ASCII);
+		}
+		return null;
+	}
+	
+	//frames in a chunk are found by walking from one FRAME line to the next
+	//chunks start where the frame would be if no frame had parameters, chunks that do not fit to the end of
+	//the chunk before are walked again sequentially, so the result is always the same as one sequential walk
+	private long[] buildIndex(long firstFrame) throws IOException {
+		long stride = FRAME.length + 1 + frameSize;
+		long estimate = Math.max((fileSize - firstFrame) / stride, 1);
+		int chunks = (int) Math.min(ConverterPool.getParallelism() * 4L, estimate);
+		long perChunk = (estimate + chunks - 1) / chunks;
+		List<Walk> walks;
+		try {
+			walks = IntStream.range(0, chunks).parallel()
+					.mapToObj(i -> walk(firstFrame + i * perChunk * stride, i == chunks - 1 ? Long.MAX_VALUE : perChunk))
+					.toList();
+			
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		
+		LongStream.Builder index = LongStream.builder();
+		long next = firstFrame;
+		for (Walk walk : walks) {
+			if (walk.start() != next || walk.offsets().length == 0) {
+				//speculation failed, continue sequentially to the end of the file
+				Walk rest = walk(next, Long.MAX_VALUE);
+				LongStream.of(rest.offsets()).forEach(index);
+				break;
+			}
+			LongStream.of(walk.offsets()).forEach(index);
+			next = walk.end();
+		}
+		return index.build().toArray();
+	}
+	
+	//data offsets of up to count frames starting with the FRAME line at position, stops at the first incomplete frame
+	private Walk walk(long start, long count) {
+		try {
+			LongStream.Builder offsets = LongStream.builder();
+			long position = start;
+			for (long i = 0; i < count; i++) {
+				String line = readLine(position);
+				if (line == null || line.startsWith("FRAME") == false) break;
+				long data = position + line.length() + 1;
+				if (data + frameSize > fileSize) break;
+				offsets.add(data);
+				position = data + frameSize;
+			}
+			return new Walk(start, position, offsets.build().toArray());
+			
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	private record Walk(long start, long end, long[] offsets) {}
+	
+	//index is only used when it was built for the same file size, modification time and frame size
+	private long[] loadIndex(Path indexPath, long fileSize, long modified) {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+			if (in.readInt() != INDEX_VERSION || in.readLong() != fileSize || in.readLong() != modified || in.readLong() != frameSize) return null;
+			long[] index = new long[in.readInt()];
+			for (int i = 0; i < index.length; i++) index[i] = in.readLong();
+			return index;
+			
+		} catch (IOException e) {
+			return null;
+		}
+	}
+	
+	//the index is not kept when the folder is not writable
+	private void saveIndex(Path indexPath, long[] index, long modified) {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexPath)))) {
+			out.writeInt(INDEX_VERSION);
+			out.writeLong(fileSize);
+			out.writeLong(modified);
+			out.writeLong(frameSize);
+			out.writeInt(index.length);
+			for (long offset : index) out.writeLong(offset);
+			
+		} catch (IOException e) {
+			try { Files.deleteIfExists(indexPath); } catch (IOException ex) {}
+		}
+	}
+}
+
+//per frame comparison of the input with a reference in one streaming pass over both sources
+//frames are handed out to a pool of workers, each worker holds the buffers of one frame pair only,
+//so memory does not depend on the length of the inputs
+class FrameComparison {
+	
+	private static final int BLOCK = 8;			//ssim is computed on blocks of 8x8 pixels
+	private static final int DIFF_GAIN = 4;		//differences are amplified for display
+	private static final double C1 = Math.pow(0.01 * 255, 2), C2 = Math.pow(0.03 * 255, 2);
+	
+	//inputs and settings the metrics were computed with
+	record Setup(FrameSource input, FrameSource reference, FormatConverter converter, int w, int h, YuvMatrix matrix, String range) {}
+	
+	final Setup setup;
+	final int frameCount;
+	private final YuvTable yuv;
+	private final float[] psnr, ssim;
+	private final int[] maxDiff;
+	private final AtomicIntegerArray computed;	//set after the metrics of a frame, read on the fx thread
+	private final AtomicLong next = new AtomicLong();
+	private final AtomicInteger remaining;
+	private final ExecutorService workers;
+	private volatile boolean cancelled;
+	private volatile RuntimeException failure;		//stops all workers, shown for the frames not compared
+	
+	FrameComparison(Setup setup, YuvTable yuv) throws IOException {
+		this.setup = setup;
+		this.yuv = yuv;
+		long siz = setup.converter().frameSize(setup.w(), setup.h());
+		this.frameCount = (int) Math.min(Math.min(setup.input().size(), setup.reference().size()) / siz, Integer.MAX_VALUE);
+		this.psnr = new float[frameCount];
+		this.ssim = new float[frameCount];
+		this.maxDiff = new int[frameCount];
+		this.computed = new AtomicIntegerArray(frameCount);
+		int threads = ConverterPool.getParallelism();
+		this.remaining = new AtomicInteger(threads);
+		this.workers = Executors.newFixedThreadPool(threads, r -> Thread.ofPlatform().name("RawViewer Compare").daemon().unstarted(r));
+		for (int i = 0; i < threads; i++) workers.execute(this::work);
+		workers.shutdown();
+	}
+	
+	void cancel() {
+		cancelled = true;
+	}
+	
+	boolean isDone() {
+		return remaining.get() == 0;
+	}
+	
+	boolean isComputed(long idx) {
+		return idx >= 0 && idx < frameCount && computed.get((int) idx) != 0;
+	}
+	
+	float psnr(int idx) {
+		return psnr[idx];
+	}
+	
+	String describe(long idx) {
+		if (isComputed(idx) == false && idx < frameCount && failure != null) return "comparison failed: " + failure;
+		if (isComputed(idx) == false) return idx < frameCount ? "comparing..." : "no reference frame";
+		int i = (int) idx;
+		if (maxDiff[i] == 0) return "identical to reference";
+		return String.format("PSNR %.2f dB, SSIM %.4f, max diff %d", psnr[i], ssim[i], maxDiff[i]);
+	}
+	
+	//frames are taken in ascending order, so both sources are read mostly sequentially
+	private void work() {
+		int w = setup.w(), h = setup.h();
+		int siz = (int) setup.converter().frameSize(w, h);
+		byte[] raw = new byte[siz];
+		IntBuffer pixels = DisplayTarget.allocatePixels(w, h);
+		IntBuffer reference = DisplayTarget.allocatePixels(w, h);
+		try {
+			long idx;
+			while (cancelled == false && (idx = next.getAndIncrement()) < frameCount) {
+				setup.input().read(raw, siz * idx, siz);
+				setup.converter().convertRows(w, h, raw, pixels, 0, h, yuv);
+				setup.reference().read(raw, siz * idx, siz);
+				setup.converter().convertRows(w, h, raw, reference, 0, h, yuv);
+				measure(pixels, reference, w, h, (int) idx);
+			}
+			
+		} catch (IOException e) {
+			//input closed or stream history lost, frames left are not compared
+			
+		} catch (RuntimeException e) {
+			failure = e;
+			cancelled = true;
+			
+		} finally {
+			remaining.decrementAndGet();
+		}
+	}
+	
+	//psnr over red, green and blue, ssim of luma, largest difference in any channel
+	private void measure(IntBuffer a, IntBuffer b, int w, int h, int idx) {
+		long sse = 0;
+		int max = 0;
+		for (int i = 0; i < w * h; i++) {
+			int pa = a.get(i), pb = b.get(i);
+			int dr = Math.abs((pa >> 16 & 255) - (pb >> 16 & 255));
+			int dg = Math.abs((pa >> 8 & 255) - (pb >> 8 & 255));
+			int db = Math.abs((pa & 255) - (pb & 255));
+			sse += dr * dr + dg * dg + db * db;
+			max = Math.max(max, Math.max(dr, Math.max(dg, db)));
+		}
+		double mse = sse / (3.0 * w * h);
+		psnr[idx] = mse == 0 ? Float.POSITIVE_INFINITY : (float) (10 * Math.log10(255 * 255 / mse));
+		ssim[idx] = (float) ssim(a, b, w, h);
+		maxDiff[idx] = max;
+		computed.set(idx, 1);
+	}
+	
+	//mean ssim over all complete blocks, a frame smaller than a block is one block
+	private static double ssim(IntBuffer a, IntBuffer b, int w, int h) {
+		int bw = Math.min(BLOCK, w), bh = Math.min(BLOCK, h);
+		double sum = 0;
+		int blocks = 0;
+		for (int y0 = 0; y0 + bh <= h; y0 += bh) {
+			for (int x0 = 0; x0 + bw <= w; x0 += bw) {
+				long sa = 0, sb = 0, saa = 0, sbb = 0, sab = 0;
+				for (int y = y0; y < y0 + bh; y++) {
+					for (int x = x0; x < x0 + bw; x++) {
+						int la = luma(a.get(y * w + x)), lb = luma(b.get(y * w + x));
+						sa += la;
+						sb += lb;
+						saa += la * la;
+						sbb += lb * lb;
+						sab += la * lb;
+					}
+				}
+				double n = bw * bh;
+				double ma = sa / n, mb = sb / n;
+				double va = saa / n - ma * ma, vb = sbb / n - mb * mb, cov = sab / n - ma * mb;
+				sum += (2 * ma * mb + C1) * (2 * cov + C2) / ((ma * ma + mb * mb + C1) * (va + vb + C2));
+				blocks++;
+			}
+		}
+		return sum / blocks;
+	}
+	
+	static int luma(int argb) {
+		return (77 * (argb >> 16 & 255) + 150 * (argb >> 8 & 255) + 29 * (argb & 255)) >> 8;
+	}
+	
+	//amplified absolute difference of each channel, dest may be the same buffer as a
+	static void difference(IntBuffer a, IntBuffer b, IntBuffer dest, int count) {
+		for (int i = 0; i < count; i++) {
+			int pa = a.get(i), pb = b.get(i);
+			int dr = Math.min(Math.abs((pa >> 16 & 255) - (pb >> 16 & 255)) * DIFF_GAIN, 255);
+			int dg = Math.min(Math.abs((pa >> 8 & 255) - (pb >> 8 & 255)) * DIFF_GAIN, 255);
+			int db = Math.min(Math.abs((pa & 255) - (pb & 255)) * DIFF_GAIN, 255);
+			dest.put(i, 0xFF000000 | dr << 16 | dg << 8 | db);
+		}
+	}
+}
+
+//psnr of all compared frames as a strip of bars, bars get shorter and redder with lower psnr
+//frames that fall onto the same column show the worst value, the current frame is marked, a click selects a frame
+class MetricStrip extends Canvas {
+	
+	private static final double MIN_DB = 20.0, MAX_DB = 60.0;
+	
+	private FrameComparison comparison;
+	private long current;
+	private LongConsumer onSelect = _ -> {};
+	
+	MetricStrip(double height) {
+		super(0, height);
+		widthProperty().addListener(_ -> redraw());
+		setOnMouseClicked(e -> {
+			if (comparison != null && comparison.frameCount > 0) {
+				onSelect.accept(Math.clamp((long) (e.getX() / getWidth() * comparison.frameCount), 0, comparison.frameCount - 1));
+			}
+		});
+	}
+	
+	void setOnSelect(LongConsumer onSelect) {
+		this.onSelect = onSelect;
+	}
+	
+	void setComparison(FrameComparison comparison) {
+		this.comparison = comparison;
+		redraw();
+	}
+	
+	void setCurrent(long idx) {
+		this.current = idx;
+		redraw();
+	}
+	
+	void redraw() {
+		GraphicsContext gc = getGraphicsContext2D();
+		double width = getWidth(), height = getHeight();
+		gc.setFill(Color.BLACK);
+		gc.fillRect(0, 0, width, height);
+		if (comparison == null || comparison.frameCount == 0) return;
+		
+		int n = comparison.frameCount;
+		int columns = (int) Math.ceil(width);
+		for (int col = 0; col < columns; col++) {
+			int f0 = (int) ((long) col * n / columns), f1 = Math.max((int) ((long) (col + 1) * n / columns), f0 + 1);
+			double worst = Double.NaN;
+			for (int f = f0; f < Math.min(f1, n); f++) {
+				if (comparison.isComputed(f) && (Double.isNaN(worst) || comparison.psnr(f) < worst)) worst = comparison.psnr(f);
+			}
+			if (Double.isNaN(worst) == false) {
+				double level = Math.clamp((worst - MIN_DB) / (MAX_DB - MIN_DB), 0.0, 1.0);
+				gc.setFill(Color.hsb(level * 120, 0.8, 0.9));
+				gc.fillRect(col, height * (1 - level) * 0.9, 1, height);
+			}
+		}
+		double x = (current + 0.5) * width / n;
+		gc.setStroke(Color.WHITE);
+		gc.strokeLine(x, 0, x, height);
+	}
+}
+
+//luma statistics of every frame and its difference to the previous frame, computed by low priority workers
+//pixels are taken from the mapped input on a grid, each worker takes runs of consecutive frames so that the previous
+//frame is at hand, the finished index is kept in a file next to the input
+class FrameAnalytics {
+	
+	private static final int VERSION = 1;
+	private static final long MAX_SAMPLES = 1 << 16;	//grid pixels per frame
+	private static final int RUN = 64;					//consecutive frames taken by a worker at a time
+	private static final double BLACK_MEAN = 24.0;		//mean luma below this is a black frame
+	private static final double FLAT_VARIANCE = 1.0;	//frames without any structure, typical for dropouts
+	private static final double CUT_MIN = 12.0;			//mean absolute difference of a scene cut is at least this
+	private static final double CUT_RATIO = 4.0;		//and this many times the mean difference of the frames before
+	private static final int CUT_WINDOW = 8;
+	private static final long SAVE_INTERVAL = 10_000;	//milliseconds between saving the index of a growing file
+	
+	//input and settings the index was computed with, also identifies the content of the index file together with size and modification time
+	record Key(FrameSource input, FormatConverter converter, String format, int w, int h) {}
+	
+	final Key key;
+	final long size, modified;
+	final int frameCount;
+	private final float[] mean, variance, diff;
+	private final byte[] min, max;
+	private final AtomicIntegerArray computed;	//set after the values of a frame, read on the fx thread
+	private final AtomicLong next = new AtomicLong();
+	private final AtomicInteger remaining;
+	private final Path indexFile;
+	private final int step, siz;
+	private final YuvTable yuv = new YuvTable(YuvMatrix.BT601, false);
+	private final boolean isGrowing;
+	private volatile long savedAt;
+	private volatile boolean cancelled;
+	
+	//values of frames that previous has already computed are taken over
+	FrameAnalytics(Key key, long size, long modified, Path indexFile, FrameAnalytics previous) {
+		this.key = key;
+		this.size = size;
+		this.modified = modified;
+		this.indexFile = indexFile;
+		this.siz = Math.toIntExact(key.converter().frameSize(key.w(), key.h()));
+		this.frameCount = (int) Math.min(size / siz, Integer.MAX_VALUE);
+		this.step = (int) Math.max(Math.ceil(Math.sqrt((double) key.w() * key.h() / MAX_SAMPLES)), 1);
+		this.mean = new float[frameCount];
+		this.variance = new float[frameCount];
+		this.diff = new float[frameCount];
+		this.min = new byte[frameCount];
+		this.max = new byte[frameCount];
+		this.computed = new AtomicIntegerArray(frameCount);
+		this.isGrowing = previous != null;
+		this.savedAt = previous != null ? previous.savedAt : 0;
+		int missing = frameCount;
+		for (int i = 0; previous != null && i < Math.min(previous.frameCount, frameCount); i++) {
+			if (previous.computed.get(i) != 0) {
+				mean[i] = previous.mean[i];
+				variance[i] = previous.variance[i];
+				diff[i] = previous.diff[i];
+				min[i] = previous.min[i];
+				max[i] = previous.max[i];
+				computed.set(i, 1);
+				missing--;
+			}
+		}
+		if (missing == 0 || isGrowing == false && load()) {
+			remaining = new AtomicInteger(0);
+			
+		} else {
+			int threads = Math.max(ConverterPool.getParallelism() / 2, 1);
+			remaining = new AtomicInteger(threads);
+			ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+				Thread thread = Thread.ofPlatform().name("RawViewer Analytics").daemon().unstarted(r);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			});
+			for (int i = 0; i < threads; i++) workers.execute(this::work);
+			workers.shutdown();
+		}
+	}
+	
+	void cancel() {
+		cancelled = true;
+	}
+	
+	boolean isDone() {
+		return remaining.get() == 0;
+	}
+	
+	private boolean isComplete() {
+		for (int i = 0; i < frameCount; i++) {
+			if (computed.get(i) == 0) return false;
+		}
+		return true;
+	}
+	
+	boolean isComputed(long idx) {
+		return idx >= 0 && idx < frameCount && computed.get((int) idx) != 0;
+	}
+	
+	float diff(int idx) {
+		return diff[idx];
+	}
+	
+	//reason a frame stands out, null for normal frames and frames not computed yet
+	//the change back from a black or flat frame is not a scene cut
+	String anomaly(int idx) {
+		if (isComputed(idx) == false) return null;
+		if (mean[idx] < BLACK_MEAN) return "black";
+		if (variance[idx] < FLAT_VARIANCE) return "flat";
+		if (idx > 0 && diff[idx] == 0) return "repeated";
+		if (diff[idx] >= CUT_MIN && isComputed(idx - 1) && mean[idx - 1] >= BLACK_MEAN && variance[idx - 1] >= FLAT_VARIANCE) {
+			double sum = 0;
+			int n = 0;
+			for (int i = Math.max(idx - CUT_WINDOW, 1); i < idx; i++) {
+				if (isComputed(i)) {
+					sum += diff[i];
+					n++;
+				}
+			}
+			if (n == 0 || diff[idx] >= CUT_RATIO * sum / n) return "scene cut";
+		}
+		return null;
+	}
+	
+	//next frame with an anomaly after idx in the given direction, -1 when there is none
+	long nextAnomaly(long idx, int direction) {
+		for (long i = idx + direction; i >= 0 && i < frameCount; i += direction) {
+			if (anomaly((int) i) != null) return i;
+		}
+		return -1;
+	}
+	
+	String describe(long idx) {
+		if (isComputed(idx) == false) return idx < frameCount ? "analyzing..." : "";
+		int i = (int) idx;
+		String anomaly = anomaly(i);
+		return String.format("luma mean %.1f, sd %.1f, min %d, max %d, diff %.2f%s", mean[i], Math.sqrt(variance[i]), min[i] & 255, max[i] & 255, diff[i], 
+				anomaly == null ? "" : ", " + anomaly);
+	}
+	
+	private void work() {
+		int gw = (key.w() + step - 1) / step, gh = (key.h() + step - 1) / step;
+		int[] previous = new int[gw * gh], current = new int[gw * gh];
+		try {
+			long run;
+			while (cancelled == false && (run = next.getAndAdd(RUN)) < frameCount) {
+				boolean hasPrevious = false;
+				for (long idx = run; idx < Math.min(run + RUN, frameCount) && cancelled == false; idx++) {
+					if (computed.get((int) idx) != 0) {
+						hasPrevious = false;
+						continue;
+					}
+					if (idx > 0 && hasPrevious == false) sampleLuma(idx - 1, previous);
+					sampleLuma(idx, current);
+					measure((int) idx, current, idx > 0 ? previous : null);
+					int[] t = previous;
+					previous = current;
+					current = t;
+					hasPrevious = true;
+				}
+			}
+			
+		} catch (IOException e) {
+			//input closed, frames left are not analyzed
+			
+		} finally {
+			//only complete passes are saved as loading marks all frames computed, a growing file at most every SAVE_INTERVAL
+			if (remaining.decrementAndGet() == 0 && cancelled == false && isComplete() 
+					&& (isGrowing == false || System.currentTimeMillis() - savedAt >= SAVE_INTERVAL)) save();
+		}
+	}
+	
+	//luma of the grid pixels, read from the luma plane when the format has one
+	private void sampleLuma(long idx, int[] dest) throws IOException {
+		int w = key.w(), h = key.h();
+		MemorySegment frame = key.input().segment((long) siz * idx, siz);
+		RawLayout layout = key.converter().layout(w, h);
+		Plane luma = layout == null || layout.isRgb() ? null : layout.c0();
+		int i = 0;
+		for (int y = 0; y < h; y += step) {
+			long row = luma == null ? 0 : luma.row(y);
+			for (int x = 0; x < w; x += step) {
+				dest[i++] = luma != null ? luma.get(frame, row, x) : FrameComparison.luma(key.converter().sample(w, h, frame, x, y, yuv));
+			}
+		}
+	}
+	
+	private void measure(int idx, int[] luma, int[] previous) {
+		long sum = 0, squares = 0, differences = 0;
+		int lo = 255, hi = 0;
+		for (int i = 0; i < luma.length; i++) {
+			int value = luma[i];
+			sum += value;
+			squares += value * value;
+			if (value < lo) lo = value;
+			if (value > hi) hi = value;
+		}
+		if (previous != null) {
+			for (int i = 0; i < luma.length; i++) {
+				differences += Math.abs(luma[i] - previous[i]);
+			}
+		}
+		double m = (double) sum / luma.length;
+		mean[idx] = (float) m;
+		variance[idx] = (float) Math.max((double) squares / luma.length - m * m, 0.0);
+		min[idx] = (byte) lo;
+		max[idx] = (byte) hi;
+		diff[idx] = (float) differences / luma.length;
+		computed.set(idx, 1);
+	}
+	
+	private boolean load() {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+			if (in.readInt() != VERSION || in.readUTF().equals(key.format()) == false || in.readInt() != key.w() || in.readInt() != key.h() 
+					|| in.readLong() != size || in.readLong() != modified || in.readInt() != frameCount) return false;
+			for (int i = 0; i < frameCount; i++) {
+				mean[i] = in.readFloat();
+				variance[i] = in.readFloat();
+				diff[i] = in.readFloat();
+				min[i] = in.readByte();
+				max[i] = in.readByte();
+			}
+			for (int i = 0; i < frameCount; i++) computed.set(i, 1);
+			return true;
+			
+		} catch (IOException e) {
+			return false;
+		}
+	}
+	
+	//written to a temporary file first, the index is skipped when the folder is not writable
+	private void save() {
+		Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+				out.writeInt(VERSION);
+				out.writeUTF(key.format());
+				out.writeInt(key.w());
+				out.writeInt(key.h());
+				out.writeLong(size);
+				out.writeLong(modified);
+				out.writeInt(frameCount);
+				for (int i = 0; i < frameCount; i++) {
+					out.writeFloat(mean[i]);
+					out.writeFloat(variance[i]);
+					out.writeFloat(diff[i]);
+					out.writeByte(min[i]);
+					out.writeByte(max[i]);
+				}
+			}
+			Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			savedAt = System.currentTimeMillis();
+			
+		} catch (IOException e) {
+			try { Files.deleteIfExists(tmp); } catch (IOException ex) {}
+		}
+	}
+}
+
+//difference to the previous frame as a heat strip, columns get brighter and yellower with more change
+//frames that fall onto the same column show the largest value, anomalies are marked, a click selects a frame
+class AnalyticsStrip extends Canvas {
+	
+	private static final double MAX_DIFF = 32.0;
+	
+	private FrameAnalytics analytics;
+	private long current;
+	private LongConsumer onSelect = _ -> {};
+	
+	AnalyticsStrip(double height) {
+		super(0, height);
+		widthProperty().addListener(_ -> redraw());
+		setOnMouseClicked(e -> {
+			if (analytics != null && analytics.frameCount > 0) {
+				onSelect.accept(Math.clamp((long) (e.getX() / getWidth() * analytics.frameCount), 0, analytics.frameCount - 1));
+			}
+		});
+	}
+	
+	void setOnSelect(LongConsumer onSelect) {
+		this.onSelect = onSelect;
+	}
+	
+	void setAnalytics(FrameAnalytics analytics) {
+		this.analytics = analytics;
+		redraw();
+	}
+	
+	void setCurrent(long idx) {
+		this.current = idx;
+		redraw();
+	}
+	
+	void redraw() {
+		GraphicsContext gc = getGraphicsContext2D();
+		double width = getWidth(), height = getHeight();
+		gc.setFill(Color.BLACK);
+		gc.fillRect(0, 0, width, height);
+		if (analytics == null || analytics.frameCount == 0) return;
+		
+		int n = analytics.frameCount;
+		int columns = (int) Math.ceil(width);
+		for (int col = 0; col < columns; col++) {
+			int f0 = (int) ((long) col * n / columns), f1 = Math.max((int) ((long) (col + 1) * n / columns), f0 + 1);
+			double largest = -1;
+			String anomaly = null;
+			for (int f = f0; f < Math.min(f1, n); f++) {
+				if (analytics.isComputed(f)) {
+					largest = Math.max(largest, analytics.diff(f));
+					if (anomaly == null) anomaly = analytics.anomaly(f);
+				}
+			}
+			if (largest >= 0) {
+				double level = Math.clamp(largest / MAX_DIFF, 0.0, 1.0);
+				gc.setFill(Color.hsb(60 * level, 1.0, 0.2 + 0.8 * level));
+				gc.fillRect(col, height / 3, 1, height);
+			}
+			if (anomaly != null) {
+				gc.setFill(switch (anomaly) {
+					case "scene cut" -> Color.WHITE;
+					case "repeated" -> Color.MAGENTA;
+					default -> Color.DEEPSKYBLUE;
+				});
+				gc.fillRect(col, 0, 1, height / 3);
+			}
+		}
+		double x = (current + 0.5) * width / n;
+		gc.setStroke(Color.WHITE);
+		gc.strokeLine(x, 0, x, height);
+	}
+}
+
+//small images of frames spread evenly over the input, made by a low priority thread
+//slots are filled coarse to fine, the first, middle, quarter frames and so on, so the timeline is usable early
+//each thumbnail only samples the pixels it needs from the frame, finished sets are cached in a file next to the input
+class Thumbnails {
+	
+	static final int SLOTS = 256;
+	static final int HEIGHT = 48;
+	private static final int VERSION = 2;
+	private static final long SAVE_INTERVAL = 10_000;	//milliseconds between saving the thumbnails of a growing file
+	
+	//input and settings the thumbnails were made with, also identifies the cache file content together with size and modification time
+	record Key(FrameSource input, FormatConverter converter, String format, int w, int h, YuvMatrix matrix, String range) {}
+	
+	final Key key;
+	final long size, modified;
+	final long frameCount;
+	final long stride;									//frames between slots, a power of two so that slots stay in place when the file grows
+	final int slots, tw, th;
+	private final AtomicReferenceArray<int[]> pixels;	//argb of each slot, null until made
+	private final Path cacheFile;
+	private volatile long savedAt;
+	private volatile boolean cancelled;
+	
+	//thumbnails of frames that previous has already made are taken over
+	Thumbnails(Key key, long size, long modified, Path cacheFile, Thumbnails previous) {
+		this.key = key;
+		this.size = size;
+		this.modified = modified;
+		this.cacheFile = cacheFile;
+		this.frameCount = size / key.converter().frameSize(key.w(), key.h());
+		long stride = 1;
+		while ((frameCount + stride - 1) / stride > SLOTS) stride *= 2;
+		this.stride = stride;
+		this.slots = (int) ((frameCount + stride - 1) / stride);
+		this.th = Math.min(HEIGHT, key.h());
+		this.tw = Math.clamp(Math.round((double) th * key.w() / key.h()), 1, 4 * HEIGHT);
+		this.pixels = new AtomicReferenceArray<>(slots);
+		this.savedAt = previous != null ? previous.savedAt : 0;
+		if (previous != null) {
+			for (int slot = 0; slot < slots; slot++) {
+				long frame = frameOf(slot);
+				if (frame % previous.stride == 0 && frame / previous.stride < previous.slots) pixels.set(slot, previous.pixels((int) (frame / previous.stride)));
+			}
+		}
+		if (isDone() == false || previous == null) {
+			Thread thread = Thread.ofPlatform().name("RawViewer Thumbnails").daemon().unstarted(() -> make(previous == null));
+			thread.setPriority(Thread.MIN_PRIORITY);
+			thread.start();
+		}
+	}
+	
+	void cancel() {
+		cancelled = true;
+	}
+	
+	//frame shown in a slot
+	long frameOf(int slot) {
+		return slot * stride;
+	}
+	
+	//slot closest to the frame that has been made already, -1 when there is none yet
+	int nearestSlot(long frame) {
+		if (slots == 0) return -1;
+		int ideal = (int) Math.min(Math.round((double) frame / stride), slots - 1);
+		for (int d = 0; d < slots; d++) {
+			if (ideal - d >= 0 && pixels.get(ideal - d) != null) return ideal - d;
+			if (ideal + d < slots && pixels.get(ideal + d) != null) return ideal + d;
+		}
+		return -1;
+	}
+	
+	int[] pixels(int slot) {
+		return pixels.get(slot);
+	}
+	
+	boolean isDone() {
+		for (int i = 0; i < slots; i++) {
+			if (pixels.get(i) == null) return cancelled;
+		}
+		return true;
+	}
+	
+	//a growing file is saved at most every SAVE_INTERVAL, the cache of a new file is read first
+	private void make(boolean isNew) {
+		if (isNew && load()) return;
+		YuvTable yuv = new YuvTable(key.matrix(), key.range().equals(RawViewer.RANGE_LIMITED));
+		long siz = key.converter().frameSize(key.w(), key.h());
+		try {
+			for (int slot : coarseToFine(slots)) {
+				if (cancelled) return;
+				if (pixels.get(slot) != null) continue;
+				MemorySegment frame = key.input().segment(siz * frameOf(slot), siz);
+				int[] thumb = new int[tw * th];
+				for (int r = 0; r < th; r++) {
+					for (int c = 0; c < tw; c++) {
+						thumb[r * tw + c] = key.converter().sample(key.w(), key.h(), frame, c * key.w() / tw, r * key.h() / th, yuv);
+					}
+				}
+				pixels.set(slot, thumb);
+			}
+			if (isNew || System.currentTimeMillis() - savedAt >= SAVE_INTERVAL) save();
+			
+		} catch (Exception e) {
+			//input closed while making thumbnails
+		}
+	}
+	
+	//bit reversed order of slot indices, ends and middle first
+	private static int[] coarseToFine(int slots) {
+		List<Integer> order = new ArrayList<>();
+		boolean[] taken = new boolean[slots];
+		for (int step = Integer.highestOneBit(Math.max(slots - 1, 1)); step >= 1; step /= 2) {
+			for (int i = 0; i < slots; i += step) {
+				if (taken[i] == false) {
+					taken[i] = true;
+					order.add(i);
+				}
+			}
+		}
+		return order.stream().mapToInt(Integer::intValue).toArray();
+	}
+	
+	//cache holds the key, the size of the thumbnails and their rgb values, compressed
+	private boolean load() {
+		try (DataInputStream in = new DataInputStream(new InflaterInputStream(new BufferedInputStream(Files.newInputStream(cacheFile))))) {
+			if (in.readInt() != VERSION || matches(in) == false) return false;
+			if (in.readInt() != slots || in.readInt() != tw || in.readInt() != th) return false;
+			byte[] rgb = new byte[tw * th * 3];
+			for (int slot = 0; slot < slots; slot++) {
+				in.readFully(rgb);
+				int[] thumb = new int[tw * th];
+				for (int i = 0; i < thumb.length; i++) {
+					thumb[i] = 0xFF000000 | (rgb[i * 3] & 255) << 16 | (rgb[i * 3 + 1] & 255) << 8 | (rgb[i * 3 + 2] & 255);
+				}
+				pixels.set(slot, thumb);
+			}
+			return true;
+			
+		} catch (IOException e) {
+			return false;
+		}
+	}
+	
+	private boolean matches(DataInputStream in) throws IOException {
+		return in.readUTF().equals(key.format()) && in.readInt() == key.w() && in.readInt() == key.h() 
+				&& in.readUTF().equals(key.matrix().name()) && in.readUTF().equals(key.range()) 
+				&& in.readLong() == size && in.readLong() == modified;
+	}
+	
+	//written to a temporary file first, the cache is skipped when the folder is not writable
+	private void save() {
+		Path tmp = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp))))) {
+				out.writeInt(VERSION);
+				out.writeUTF(key.format());
+				out.writeInt(key.w());
+				out.writeInt(key.h());
+				out.writeUTF(key.matrix().name());
+				out.writeUTF(key.range());
+				out.writeLong(size);
+				out.writeLong(modified);
+				out.writeInt(slots);
+				out.writeInt(tw);
+				out.writeInt(th);
+				byte[] rgb = new byte[tw * th * 3];
+				for (int slot = 0; slot < slots; slot++) {
+					int[] thumb = pixels.get(slot);
+					for (int i = 0; i < thumb.length; i++) {
+						rgb[i * 3] = (byte) (thumb[i] >> 16);
+						rgb[i * 3 + 1] = (byte) (thumb[i] >> 8);
+						rgb[i * 3 + 2] = (byte) thumb[i];
+					}
+					out.write(rgb);
+				}
+			}
+			Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			savedAt = System.currentTimeMillis();
+			
+		} catch (IOException e) {
+			try { Files.deleteIfExists(tmp); } catch (IOException ex) {}
+		}
+	}
+}
+
+//row of thumbnails spread over the input, each column shows the closest thumbnail made so far
+//the current frame is marked, clicking or dragging selects a frame
+class ThumbnailStrip extends Canvas {
+	
+	private Thumbnails thumbnails;
+	private final Map<Integer, WritableImage> images = new HashMap<>();
+	private long current;
+	private LongConsumer onSelect = _ -> {};
+	
+	ThumbnailStrip() {
+		super(0, Thumbnails.HEIGHT);
+		widthProperty().addListener(_ -> redraw());
+		setOnMousePressed(e -> select(e.getX()));
+		setOnMouseDragged(e -> select(e.getX()));
+	}
+	
+	private void select(double x) {
+		if (thumbnails != null && thumbnails.frameCount > 0) {
+			onSelect.accept(Math.clamp((long) (x / getWidth() * thumbnails.frameCount), 0, thumbnails.frameCount - 1));
+		}
+	}
+	
+	void setOnSelect(LongConsumer onSelect) {
+		this.onSelect = onSelect;
+	}
+	
+	void setThumbnails(Thumbnails thumbnails) {
+		this.thumbnails = thumbnails;
+		images.clear();
+		redraw();
+	}
+	
+	void setCurrent(long idx) {
+		this.current = idx;
+		redraw();
+	}
+	
+	void redraw() {
+		GraphicsContext gc = getGraphicsContext2D();
+		double width = getWidth(), height = getHeight();
+		gc.setFill(Color.BLACK);
+		gc.fillRect(0, 0, width, height);
+		if (thumbnails == null || thumbnails.frameCount == 0) return;
+		
+		int columns = (int) Math.max(Math.round(width / (thumbnails.tw * height / thumbnails.th)), 1);
+		double columnWidth = width / columns;
+		for (int col = 0; col < columns; col++) {
+			long frame = (long) ((col + 0.5) * thumbnails.frameCount / columns);
+			int slot = thumbnails.nearestSlot(frame);
+			if (slot >= 0) gc.drawImage(image(slot), col * columnWidth, 0, columnWidth - 1, height);
+		}
+		double x = (current + 0.5) * width / thumbnails.frameCount;
+		gc.setStroke(Color.WHITE);
+		gc.setLineWidth(2);
+		gc.strokeLine(x, 0, x, height);
+	}
+	
+	private WritableImage image(int slot) {
+		return images.computeIfAbsent(slot, _ -> {
+			WritableImage image = new WritableImage(thumbnails.tw, thumbnails.th);
+			image.getPixelWriter().setPixels(0, 0, thumbnails.tw, thumbnails.th, PixelFormat.getIntArgbInstance(), thumbnails.pixels(slot), 0, thumbnails.tw);
+			return image;
+		});
+	}
+}
+
+//histogram, waveform and vectorscope of a frame computed from the raw components instead of the converted image
+//pixels are taken on a grid so that the cost stays bounded for large frames, rows of the grid are split into one part
+//per thread, each part counts into its own partial result and the partials are added when all parts are done
+class VideoScopes {
+	
+	static final int BINS = 256;
+	private static final long MAX_SAMPLES = 1 << 18;
+	
+	//counts of one frame, waveform and vectors are images of BINS x BINS with the highest value in the top row
+	static final class Result {
+		
+		final int[] luma = new int[BINS], red = new int[BINS], green = new int[BINS], blue = new int[BINS];
+		final int[] waveform = new int[BINS * BINS];	//(255 - luma) * BINS + column
+		final int[] vectors = new int[BINS * BINS];		//(255 - v) * BINS + u
+		
+		void clear() {
+			for (int[] counts : List.of(luma, red, green, blue, waveform, vectors)) {
+				Arrays.fill(counts, 0);
+			}
+		}
+		
+		void add(Result other) {
+			for (int i = 0; i < BINS; i++) {
+				luma[i] += other.luma[i];
+				red[i] += other.red[i];
+				green[i] += other.green[i];
+				blue[i] += other.blue[i];
+			}
+			for (int i = 0; i < BINS * BINS; i++) {
+				waveform[i] += other.waveform[i];
+				vectors[i] += other.vectors[i];
+			}
+		}
+	}
+	
+	private volatile boolean enabled;
+	private final AtomicReference<Result> latest = new AtomicReference<>();
+	private final AtomicReference<Result> spare = new AtomicReference<>();
+	private Result[] partials = new Result[0];
+	
+	boolean isEnabled() {
+		return enabled;
+	}
+	
+	void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+	
+	//most recent result that has not been taken yet, null when there is none
+	Result take() {
+		return latest.getAndSet(null);
+	}
+	
+	//give back a result that is no longer displayed
+	void recycle(Result result) {
+		spare.set(result);
+	}
+	
+	synchronized void compute(FormatConverter converter, int w, int h, MemorySegment frame, YuvTable yuv) {
+		int step = (int) Math.max(Math.ceil(Math.sqrt((double) w * h / MAX_SAMPLES)), 1);
+		int rows = (h + step - 1) / step;
+		int parts = Math.clamp(ConverterPool.getParallelism(), 1, rows);
+		if (partials.length < parts) {
+			int n = partials.length;
+			partials = Arrays.copyOf(partials, parts);
+			for (int i = n; i < parts; i++) partials[i] = new Result();
+		}
+		RawLayout layout = converter.layout(w, h);
+		RgbToYuv rgbToYuv = new RgbToYuv(yuv.matrix);
+		ConverterPool.forEachPart(parts, p -> {
+			Result partial = partials[p];
+			partial.clear();
+			for (int r = rows * p / parts; r < rows * (p + 1) / parts; r++) {
+				countRow(partial, converter, layout, w, h, frame, r * step, step, yuv, rgbToYuv);
+			}
+		});
+		
+		Result result = spare.getAndSet(null);
+		if (result == null) result = new Result();
+		result.clear();
+		for (int p = 0; p < parts; p++) {
+			result.add(partials[p]);
+		}
+		Result old = latest.getAndSet(result);
+		if (old != null) spare.set(old);
+	}
+	
+	//count every step-th pixel of row y, raw rgb is turned into yuv for the vectorscope, raw yuv into rgb for the histogram
+	private static void countRow(Result result, FormatConverter converter, RawLayout layout, int w, int h, MemorySegment frame, 
+			int y, int step, YuvTable yuv, RgbToYuv rgbToYuv) {
+		Plane p0 = layout == null ? null : layout.c0(), p1 = layout == null ? null : layout.c1(), p2 = layout == null ? null : layout.c2();
+		long row0 = p0 == null ? 0 : p0.row(y), row1 = p1 == null ? 0 : p1.row(y), row2 = p2 == null ? 0 : p2.row(y);
+		boolean isRgb = layout == null || layout.isRgb();
+		long columnMul = ((long) BINS << 32) / w;	//waveform column of x is x * columnMul >>> 32
+		int[] luma = result.luma, red = result.red, green = result.green, blue = result.blue, waveform = result.waveform, vectors = result.vectors;
+		for (int x = 0; x < w; x += step) {
+			int l, u, v, argb;
+			if (isRgb) {
+				argb = p0 == null ? converter.sample(w, h, frame, x, y, yuv) : p0.get(frame, row0, x) << 16 | p1.get(frame, row1, x) << 8 | p2.get(frame, row2, x);
+				l = rgbToYuv.y(argb);
+				u = rgbToYuv.u(argb, l);
+				v = rgbToYuv.v(argb, l);
+				
+			} else {
+				l = p0.get(frame, row0, x);
+				u = p1 == null ? 128 : p1.get(frame, row1, x);
+				v = p2 == null ? 128 : p2.get(frame, row2, x);
+				argb = yuv.argb(l, u, v);
+			}
+			luma[l]++;
+			red[argb >> 16 & 255]++;
+			green[argb >> 8 & 255]++;
+			blue[argb & 255]++;
+			waveform[(255 - l) * BINS + (int) (x * columnMul >>> 32)]++;
+			vectors[(255 - v) * BINS + u]++;
+		}
+	}
+	
+	//full range yuv of an rgb pixel in fixed point with the coefficients of the selected matrix
+	private record RgbToYuv(int ry, int gy, int by, int uMul, int vMul) {
+		
+		private static final int SHIFT = 16;
+		
+		RgbToYuv(YuvMatrix matrix) {
+			this((int) Math.round(matrix.kr * (1 << SHIFT)), (int) Math.round((1.0 - matrix.kr - matrix.kb) * (1 << SHIFT)), 
+					(int) Math.round(matrix.kb * (1 << SHIFT)), 
+					(int) Math.round(0.5 / (1.0 - matrix.kb) * (1 << SHIFT)), (int) Math.round(0.5 / (1.0 - matrix.kr) * (1 << SHIFT)));
+		}
+		
+		int y(int argb) {
+			return YuvTable.clip((ry * (argb >> 16 & 255) + gy * (argb >> 8 & 255) + by * (argb & 255) + (1 << (SHIFT - 1))) >> SHIFT);
+		}
+		
+		int u(int argb, int y) {
+			return YuvTable.clip((((argb & 255) - y) * uMul + (1 << (SHIFT - 1)) >> SHIFT) + 128);
+		}
+		
+		int v(int argb, int y) {
+			return YuvTable.clip((((argb >> 16 & 255) - y) * vMul + (1 << (SHIFT - 1)) >> SHIFT) + 128);
+		}
+	}
+}
+
+//histogram, waveform and vectorscope side by side, counts are shown on a square root scale
+class ScopesView extends Canvas {
+	
+	private static final int BINS = VideoScopes.BINS;
+	
+	private final WritableImage waveform = new WritableImage(BINS, BINS);
+	private final WritableImage vectors = new WritableImage(BINS, BINS);
+	private final int[] pixels = new int[BINS * BINS];
+	private VideoScopes.Result result;
+	
+	ScopesView(double height) {
+		super(0, height);
+		widthProperty().addListener(_ -> redraw());
+	}
+	
+	//show a new result, returns the result shown before
+	VideoScopes.Result show(VideoScopes.Result result) {
+		VideoScopes.Result old = this.result;
+		this.result = result;
+		toImage(result.waveform, waveform, 0x40FF40);
+		toImage(result.vectors, vectors, 0xFFFFFF);
+		redraw();
+		return old;
+	}
+	
+	private void toImage(int[] counts, WritableImage image, int rgb) {
+		int max = 1;
+		for (int count : counts) max = Math.max(max, count);
+		for (int i = 0; i < counts.length; i++) {
+			int alpha = (int) (255 * Math.sqrt((double) counts[i] / max));
+			pixels[i] = alpha << 24 | rgb;
+		}
+		image.getPixelWriter().setPixels(0, 0, BINS, BINS, PixelFormat.getIntArgbInstance(), pixels, 0, BINS);
+	}
+	
+	void redraw() {
+		GraphicsContext gc = getGraphicsContext2D();
+		double width = getWidth(), height = getHeight(), panel = width / 3;
+		gc.setFill(Color.BLACK);
+		gc.fillRect(0, 0, width, height);
+		if (result == null) return;
+		
+		drawHistogram(gc, 4, 4, panel - 8, height - 8);
+		
+		//waveform with lines at the limits of limited range luma
+		double x0 = panel + 4, w = panel - 8, h = height - 8;
+		gc.drawImage(waveform, x0, 4, w, h);
+		gc.setStroke(Color.gray(0.5, 0.6));
+		gc.setLineWidth(1);
+		for (int level : new int[] {16, 235}) {
+			double y = 4 + (255 - level + 0.5) * h / BINS;
+			gc.strokeLine(x0, y, x0 + w, y);
+		}
+		
+		//vectorscope in a square with circle and axes through neutral chroma
+		double side = Math.min(panel - 8, height - 8);
+		double vx = 2 * panel + (panel - side) / 2, vy = (height - side) / 2;
+		gc.strokeOval(vx, vy, side, side);
+		gc.strokeLine(vx + side / 2, vy, vx + side / 2, vy + side);
+		gc.strokeLine(vx, vy + side / 2, vx + side, vy + side / 2);
+		gc.drawImage(vectors, vx, vy, side, side);
+	}
+	
+	private void drawHistogram(GraphicsContext gc, double x0, double y0, double w, double h) {
+		int max = 1;
+		for (int[] counts : List.of(result.luma, result.red, result.green, result.blue)) {
+			for (int i = 1; i < BINS - 1; i++) max = Math.max(max, counts[i]);	//clipped ends would hide the rest
+		}
+		gc.setFill(Color.gray(0.6, 0.8));
+		gc.beginPath();
+		gc.moveTo(x0, y0 + h);
+		for (int i = 0; i < BINS; i++) {
+			gc.lineTo(x0 + (i + 0.5) * w / BINS, y0 + h - Math.min(result.luma[i] / (double) max, 1.0) * h);
+		}
+		gc.lineTo(x0 + w, y0 + h);
+		gc.closePath();
+		gc.fill();
+		gc.setLineWidth(1);
+		for (Map.Entry<int[], Color> channel : Map.of(result.red, Color.RED, result.green, Color.LIME, result.blue, Color.DODGERBLUE).entrySet()) {
+			gc.setStroke(channel.getValue());
+			gc.beginPath();
+			for (int i = 0; i < BINS; i++) {
+				double x = x0 + (i + 0.5) * w / BINS, y = y0 + h - Math.min(channel.getKey()[i] / (double) max, 1.0) * h;
+				if (i == 0) gc.moveTo(x, y);
+				else gc.lineTo(x, y);
+			}
+			gc.stroke();
+		}
+	}
+}
+
+//subclass of Pane to always center an ImageView
+//the view can be zoomed into the frame and moved by dragging, a double click shows the whole frame again
+class ImageViewPane extends Pane {
+	
+	private static final double ZOOM_STEP = 1.25;
+	private static final double MAX_SCALE = 64.0;	//screen pixels per frame pixel at the highest zoom
+	
+	private ImageView imageView;
+	private int frameWidth = 1, frameHeight = 1;
+	private double zoom = 1.0;						//1.0 shows the whole frame
+	private double centerX = 0.5, centerY = 0.5;	//center of the view relative to the frame size
+	private double dragX, dragY, dragCenterX, dragCenterY;
+	private Runnable onViewChanged = () -> {};
+	
+	ImageViewPane(ImageView imageView) {
+		super(imageView);
+		this.imageView = imageView;
+		
+		setOnMousePressed(e -> {
+			dragX = e.getX();
+			dragY = e.getY();
+			dragCenterX = centerX;
+			dragCenterY = centerY;
+		});
+		
+		setOnMouseDragged(e -> {
+			if (isZoomed()) {
+				double scale = scale();
+				centerX = dragCenterX - (e.getX() - dragX) / (scale * frameWidth);
+				centerY = dragCenterY - (e.getY() - dragY) / (scale * frameHeight);
+				viewChanged();
+			}
+		});
+		
+		setOnMouseClicked(e -> {
+			if (e.getClickCount() == 2 && isZoomed()) {
+				zoom = 1.0;
+				viewChanged();
+			}
+		});
+	}
+	
+	//called on the fx thread whenever zoom or position change
+	void setOnViewChanged(Runnable onViewChanged) {
+		this.onViewChanged = onViewChanged;
+	}
+	
+	//the view is reset when the frame size changes
+	void setFrameSize(int w, int h) {
+		if (w != frameWidth || h != frameHeight) {
+			frameWidth = w;
+			frameHeight = h;
+			zoom = 1.0;
+			centerX = centerY = 0.5;
+		}
+	}
+	
+	boolean isZoomed() {
+		return zoom > 1.0;
+	}
+	
+	//zoom in or out by steps, the frame position under the mouse stays in place
+	void zoom(int steps, double mouseX, double mouseY) {
+		double fitScale = fitScale();
+		double oldScale = scale();
+		zoom = Math.clamp(zoom * Math.pow(ZOOM_STEP, steps), 1.0, Math.max(MAX_SCALE / fitScale, 1.0));
+		double newScale = scale();
+		centerX += (mouseX - getWidth() / 2) * (1 / oldScale - 1 / newScale) / frameWidth;
+		centerY += (mouseY - getHeight() / 2) * (1 / oldScale - 1 / newScale) / frameHeight;
+		viewChanged();
+	}
+	
+	//region of the frame on screen, outputScale converts layout coordinates to device pixels
+	ViewRegion viewRegion(double outputScale) {
+		int viewWidth = (int) Math.max(Math.ceil(getWidth() * outputScale), 1);
+		int viewHeight = (int) Math.max(Math.ceil(getHeight() * outputScale), 1);
+		return ViewRegion.of(frameWidth, frameHeight, centerX, centerY, scale() * outputScale, viewWidth, viewHeight);
+	}
+	
+	//layout pixels per frame pixel when the whole frame fits into the pane
+	private double fitScale() {
+		return getWidth() > 0 && getHeight() > 0 ? Math.min(getWidth() / frameWidth, getHeight() / frameHeight) : 1.0;
+	}
+	
+	private double scale() {
+		return fitScale() * zoom;
+	}
+	
+	private void viewChanged() {
+		if (isZoomed()) {
+			centerX = Math.clamp(centerX, 0.0, 1.0);
+			centerY = Math.clamp(centerY, 0.0, 1.0);
+			
+		} else {
+			centerX = centerY = 0.5;
+		}
+		onViewChanged.run();
+	}
+	
+	@Override
+	protected void layoutChildren() {
+		imageView.setFitWidth(getWidth());
+		imageView.setFitHeight(getHeight());
+		imageView.setLayoutX((getWidth() - imageView.prefWidth(getHeight())) / 2.0);
+		imageView.setLayoutY((getHeight() - imageView.prefHeight(getWidth())) / 2.0);
+		super.layoutChildren();
+	}
+}
+
+//additional input shown next to the main image, its frame index follows the main view
+//each pane has its own file, size and format, matrix and range are shared with the main view
+class SyncPane extends VBox {
+	
+	//settings used by the thread preparing frames, replaced as a whole on the fx thread
+	record Setup(FormatConverter converter, int w, int h) {}
+	
+	private final FrameSource input;
+	private final Map<String, FormatConverter> formats;
+	private final ComboBox<Integer> comboWidth, comboHeight;
+	private final ComboBox<String> comboFormat;
+	private final ImageView imageView = new ImageView();
+	private volatile Setup setup;
+	
+	//only accessed by the thread preparing frames, one frame at a time
+	private Setup preparedSetup;
+	private final Map<Integer, DisplayTargets> targets = new HashMap<>();
+	private byte[] buffer;
+	
+	SyncPane(String name, FrameSource input, Map<String, FormatConverter> formats, int w, int h, String format, 
+			StringConverter<Integer> sizeConverter, Runnable onChanged, Runnable onClose) {
+		this.input = input;
+		this.formats = formats;
+		comboWidth = sizeCombo(w, sizeConverter);
+		comboHeight = sizeCombo(h, sizeConverter);
+		comboFormat = new ComboBox<>(FXCollections.observableArrayList(formats.keySet()).sorted());
+		comboFormat.setValue(format);
+		Button btnClose = new Button("Close");
+		Label lblName = new Label(name);
+		lblName.setMinWidth(0);
+		lblName.setMaxWidth(Double.MAX_VALUE);
+		HBox.setHgrow(lblName, Priority.ALWAYS);
+		HBox header = new HBox(4, lblName, comboWidth, comboHeight, comboFormat, btnClose);
+		header.setAlignment(Pos.CENTER_LEFT);
+		header.setPadding(new Insets(4));
+		
+		imageView.setPreserveRatio(true);
+		ImageViewPane pane = new ImageViewPane(imageView);
+		pane.setBackground(new Background(new BackgroundFill(Color.BLACK, null, null)));
+		getChildren().addAll(header, pane);
+		VBox.setVgrow(pane, Priority.ALWAYS);
+		setMinWidth(0);
+		setPrefWidth(0);
+		
+		updateSetup();
+		for (ComboBox<?> combo : List.of(comboWidth, comboHeight, comboFormat)) {
+			combo.setOnAction(_ -> {
+				updateSetup();
+				onChanged.run();
+			});
+		}
+		btnClose.setOnAction(_ -> onClose.run());
+	}
+	
+	private static ComboBox<Integer> sizeCombo(int value, StringConverter<Integer> sizeConverter) {
+		ComboBox<Integer> combo = new ComboBox<>(FXCollections.observableList(RawViewer.pixelList));
+		combo.setEditable(true);
+		combo.setPrefWidth(85);
+		combo.setConverter(sizeConverter);
+		combo.setValue(value);
+		return combo;
+	}
+	
+	private void updateSetup() {
+		Integer w = comboWidth.getValue(), h = comboHeight.getValue();
+		FormatConverter converter = formats.get(comboFormat.getValue());
+		boolean valid = converter != null && w != null && w > 0 && h != null && h > 0 && RawViewer.isFullFrameSupported(converter.frameSize(w, h), w, h);
+		setup = valid ? new Setup(converter, w, h) : null;
+	}
+	
+	//read and convert one frame into an image that is not on screen, step > 1 converts at reduced resolution
+	//null when the pane has no such frame, its frame is too large for one image or preparing was cancelled
+	DisplayTarget prepare(long idx, YuvTable yuv, int step, BooleanSupplier isCancelled) throws IOException, InterruptedException {
+		Setup s = setup;
+		if (s == null) return null;
+		long siz = s.converter().frameSize(s.w(), s.h());
+		if (siz * (idx + 1) > input.size() || siz * idx < input.start()) return null;
+		if (s != preparedSetup) {
+			preparedSetup = s;
+			targets.clear();
+			buffer = new byte[(int) siz];
+		}
+		DisplayTargets owner = targets.computeIfAbsent(step, 
+				_ -> new DisplayTargets(FormatConverter.decimatedSize(s.w(), step), FormatConverter.decimatedSize(s.h(), step)));
+		DisplayTarget target = owner.take(isCancelled);
+		if (target == null) return null;
+		try {
+			input.read(buffer, siz * idx, (int) siz);
+			if (step == 1) s.converter().convert(s.w(), s.h(), buffer, target.pixels, yuv);
+			else s.converter().convertDecimated(s.w(), s.h(), buffer, target.pixels, step, yuv);
+			
+		} catch (IOException | RuntimeException e) {
+			owner.release(target);
+			throw e;
+		}
+		target.idx = idx;
+		return target;
+	}
+	
+	//on fx thread
+	void show(DisplayTarget target) {
+		target.owner.show(target, imageView);
+	}
+	
+	void close() {
+		try { input.close(); } catch (Exception e) {}
+	}
+}
+
+//panes shown in sync with the main view, the frames of all panes are read and converted in parallel
+//and handed to the fx thread together with the main image, so all panes change in the same pulse
+class SyncGroup {
+	
+	private static final ExecutorService workers = Executors.newCachedThreadPool(
+			r -> Thread.ofPlatform().name("RawViewer Sync").daemon().unstarted(r));
+	
+	private final List<SyncPane> panes = new CopyOnWriteArrayList<>();
+	
+	void add(SyncPane pane) {
+		panes.add(pane);
+	}
+	
+	void remove(SyncPane pane) {
+		panes.remove(pane);
+	}
+	
+	//start reading and converting the frame of every pane, conversions share the converter pool
+	Frame start(long idx, YuvTable yuv, int step) {
+		Frame frame = new Frame();
+		for (SyncPane pane : panes) {
+			frame.panes.add(pane);
+			frame.futures.add(workers.submit(() -> pane.prepare(idx, yuv, step, () -> frame.released)));
+		}
+		return frame;
+	}
+	
+	//images of one frame index in all panes, either shown or released exactly once
+	static class Frame {
+		
+		private final List<SyncPane> panes = new ArrayList<>();
+		private final List<Future<DisplayTarget>> futures = new ArrayList<>();
+		private final List<DisplayTarget> targets = new ArrayList<>();
+		private volatile boolean released;
+		
+		//wait until all panes are converted
+		void await() throws Exception {
+			try {
+				for (Future<DisplayTarget> future : futures) {
+					targets.add(future.get());
+				}
+				
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof Exception ex) throw ex;
+				throw e;
+			}
+		}
+		
+		//on fx thread, call in the same runnable that shows the main image
+		void show() {
+			for (int i = 0; i < targets.size(); i++) {
+				if (targets.get(i) != null) panes.get(i).show(targets.get(i));
+			}
+		}
+		
+		//give back images that will not be shown, waits for conversions still running
+		void release() {
+			if (released) return;
+			released = true;
+			for (Future<DisplayTarget> future : futures) {
+				try {
+					DisplayTarget target = future.get();
+					if (target != null) target.owner.release(target);
+					
+				} catch (Exception e) {
+					//failed panes hold no image
+				}
+			}
+		}
+	}
+}
+
+//single long lived worker thread, only the most recent request is run
+//requests replaced before the worker gets to them are dropped without being run
+class LatestRequestExecutor implements Executor {
+	
+	private final AtomicReference<Runnable> pending = new AtomicReference<>();
+	private final Thread worker;
+	
+	LatestRequestExecutor(String name) {
+		worker = Thread.ofPlatform().name(name).daemon().start(this::work);
+	}
+	
+	@Override
+	public void execute(Runnable request) {
+		pending.set(request);
+		LockSupport.unpark(worker);
+	}
+	
+	private void work() {
+		while (true) {
+			Runnable request = pending.getAndSet(null);
+			if (request == null) {
+				LockSupport.park(this);
+				
+			} else {
+				try {
+					request.run();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+}
+
+//playback in three parallel stages: read -> convert -> display
+//raw buffers circulate between reading and converting, converted frames are written into images from DisplayTargets
+//frames may be converted at reduced resolution as chosen by the ResolutionController
+class PlaybackPipeline {
+	
+	private static final int SLOTS = 3;
+	private static final long POLL_MILLIS = 50;
+	private static final ExecutorService stageExecutor = Executors.newCachedThreadPool(
+			r -> Thread.ofPlatform().name("RawViewer Pipeline").daemon().unstarted(r));
+	
+	private final FrameSource input;
+	private final FormatConverter converter;
+	private final YuvTable yuv;
+	private final DisplayTargets targets;
+	private final ImageView imageView;
+	private final int w, h, siz;
+	private final long idxStart, idxMax;
+	private final FramePacer pacer;
+	private final ResolutionController resolution;
+	private final PipelineTimings timings;
+	private final SyncGroup sync;
+	private final VideoScopes scopes;
+	private final Map<Integer, DisplayTargets> decimatedTargets = new HashMap<>(); //only accessed by the convert stage
+	
+	private final BlockingQueue<FrameSlot> freeSlots = new ArrayBlockingQueue<>(SLOTS);
+	private final BlockingQueue<FrameSlot> readSlots = new ArrayBlockingQueue<>(SLOTS);
+	private final BlockingQueue<ConvertedFrame> convertedFrames = new ArrayBlockingQueue<>(DisplayTargets.COUNT);
+	private final AtomicReference<Throwable> failure = new AtomicReference<>();
+	private volatile boolean running = true;
+	
+	//idxStart is the frame currently on screen, playback continues with the following frame
+	PlaybackPipeline(FrameSource input, FormatConverter converter, YuvTable yuv, DisplayTargets targets, ImageView imageView, 
+			long idxStart, long idxMax, long nanosPerFrame, ResolutionController resolution, PipelineTimings timings, SyncGroup sync, VideoScopes scopes) {
+		this.input = input;
+		this.converter = converter;
+		this.yuv = yuv;
+		this.targets = targets;
+		this.imageView = imageView;
+		this.w = targets.w;
+		this.h = targets.h;
+		this.siz = Math.toIntExact(converter.frameSize(w, h));
+		this.idxStart = idxStart;
+		this.idxMax = idxMax;
+		this.pacer = new FramePacer(nanosPerFrame);
+		this.resolution = resolution;
+		this.timings = timings;
+		this.sync = sync;
+		this.scopes = scopes;
+		timings.reset(nanosPerFrame);
+		for (int i = 0; i < SLOTS; i++) freeSlots.add(new FrameSlot(siz));
+	}
+	
+	//play until the last frame has been shown or until cancelled, display stage runs on the calling thread
+	//frame indices of shown frames are passed to onShown on the fx thread
+	void play(BooleanSupplier isCancelled, Consumer<String> status, LongConsumer onShown) throws Exception {
+		CompletableFuture<?> reader = runStage(this::readStage);
+		CompletableFuture<?> converter = runStage(this::convertStage);
+		try {
+			while (isCancelled.getAsBoolean() == false) {
+				ConvertedFrame converted = convertedFrames.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				checkFailure();
+				if (converted != null) {
+					DisplayTarget target = converted.target();
+					long frameSlot = target.idx - idxStart;
+					pacer.awaitSlot(frameSlot);
+					FrameDisplayEvent displayEvent = new FrameDisplayEvent();
+					displayEvent.begin();
+					long handoff = System.nanoTime();
+					Platform.runLater(() -> {
+						long t = System.nanoTime();
+						FrameUploadEvent uploadEvent = new FrameUploadEvent();
+						uploadEvent.begin();
+						target.owner.show(target, imageView);
+						converted.panes().show();
+						uploadEvent.frame = displayEvent.frame = target.idx;
+						uploadEvent.commit();
+						displayEvent.commit();
+						long now = System.nanoTime();
+						timings.record(PipelineTimings.Stage.UPLOAD, now - t);
+						timings.record(PipelineTimings.Stage.DISPLAY, now - handoff);
+						timings.frameShown(now);
+						onShown.accept(target.idx);
+					});
+					pacer.frameShown(frameSlot);
+					status.accept(pacer + ", " + resolution);
+					if (target.idx >= idxMax) break;
+				}
+			}
+			
+		} finally {
+			//wait for the stages to finish, then give back images that were converted but not shown
+			running = false;
+			CompletableFuture.allOf(reader, converter).join();
+			convertedFrames.forEach(ConvertedFrame::release);
+		}
+	}
+	
+	//read the frame that is due next, skip frames when the pipeline falls behind the clock
+	private void readStage() throws Exception {
+		long idx = idxStart;
+		while (running && idx < idxMax) {
+			FrameSlot slot = freeSlots.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+			if (slot != null) {
+				long next = Math.min(Math.max(idx + 1, idxStart + pacer.currentSlot()), idxMax);
+				if (next - idx > 1) {
+					pacer.frameDropped(next - idx - 1);
+					timings.framesDropped(next - idx - 1);
+					FramesDroppedEvent droppedEvent = new FramesDroppedEvent();
+					droppedEvent.frame = next;
+					droppedEvent.count = next - idx - 1;
+					droppedEvent.commit();
+				}
+				idx = next;
+				slot.idx = idx;
+				FrameReadEvent event = new FrameReadEvent();
+				event.begin();
+				long t = System.nanoTime();
+				input.read(slot.raw, siz * idx, siz);
+				timings.record(PipelineTimings.Stage.READ, System.nanoTime() - t);
+				event.frame = idx;
+				event.bytes = siz;
+				event.commit();
+				readSlots.add(slot);
+			}
+		}
+	}
+	
+	//convert raw data straight into the pixel buffer of an image that is not on screen
+	private void convertStage() throws Exception {
+		while (running) {
+			FrameSlot slot = readSlots.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+			int step = resolution.step();
+			DisplayTarget target = slot == null ? null : targetsFor(step).take(() -> running == false);
+			if (target != null) {
+				FrameConvertEvent event = new FrameConvertEvent();
+				event.begin();
+				long t = System.nanoTime();
+				SyncGroup.Frame panes = sync.start(slot.idx, yuv, step);
+				try {
+					if (step == 1) converter.convert(w, h, slot.raw, target.pixels, yuv);
+					else converter.convertDecimated(w, h, slot.raw, target.pixels, step, yuv);
+					panes.await();
+					
+				} catch (Exception e) {
+					panes.release();
+					target.owner.release(target);
+					throw e;
+				}
+				long nanos = System.nanoTime() - t;
+				resolution.frameConverted(nanos);
+				timings.record(PipelineTimings.Stage.CONVERT, nanos);
+				event.frame = slot.idx;
+				event.step = step;
+				event.commit();
+				if (scopes.isEnabled()) scopes.compute(converter, w, h, MemorySegment.ofArray(slot.raw), yuv);
+				target.idx = slot.idx;
+				freeSlots.add(slot);
+				convertedFrames.add(new ConvertedFrame(target, panes));
+				if (target.idx >= idxMax) break;
+			}
+		}
+	}
+	
+	//images for frames at reduced resolution
+	private DisplayTargets targetsFor(int step) {
+		return step == 1 ? targets : decimatedTargets.computeIfAbsent(step, 
+				_ -> new DisplayTargets(FormatConverter.decimatedSize(w, step), FormatConverter.decimatedSize(h, step)));
+	}
+	
+	private CompletableFuture<Void> runStage(PipelineStage stage) {
+		return CompletableFuture.runAsync(() -> {
+			try {
+				stage.run();
+			} catch (Throwable e) {
+				failure.compareAndSet(null, e);
+				running = false;
+			}
+		}, stageExecutor);
+	}
+	
+	private void checkFailure() throws Exception {
+		Throwable e = failure.get();
+		if (e instanceof Exception ex) throw ex;
+		if (e != null) throw new RuntimeException(e);
+	}
+	
+	//converted image of the main view and the images of the sync panes for the same frame
+	private record ConvertedFrame(DisplayTarget target, SyncGroup.Frame panes) {
+		
+		void release() {
+			target.owner.release(target);
+			panes.release();
+		}
+	}
+	
+	private interface PipelineStage {
+		void run() throws Exception;
+	}
+	
+	//raw data of one frame on its way through the pipeline
+	private static class FrameSlot {
+		
+		private final byte[] raw;
+		private long idx;
+		
+		private FrameSlot(int siz) {
+			raw = new byte[siz];
+		}
+	}
+}
+
+//durations of the stages of the playback pipeline over the most recent frames, shown in the timing overlay
+//read and convert are measured on the stage threads, upload and display latency on the fx thread
+class PipelineTimings {
+	
+	enum Stage { READ, CONVERT, UPLOAD, DISPLAY }
+	
+	private static final int WINDOW = 240;
+	
+	private final long[][] samples = new long[Stage.values().length][WINDOW];
+	private final long[] counts = new long[Stage.values().length];
+	private final long[] shownTimes = new long[WINDOW];
+	private long shown, dropped, nanosPerFrame;
+	
+	synchronized void reset(long nanosPerFrame) {
+		Arrays.fill(counts, 0);
+		shown = dropped = 0;
+		this.nanosPerFrame = nanosPerFrame;
+	}
+	
+	synchronized void record(Stage stage, long nanos) {
+		samples[stage.ordinal()][(int) (counts[stage.ordinal()]++ % WINDOW)] = nanos;
+	}
+	
+	synchronized void frameShown(long now) {
+		shownTimes[(int) (shown++ % WINDOW)] = now;
+	}
+	
+	synchronized void framesDropped(long count) {
+		dropped += count;
+	}
+	
+	//fps over the window of shown frames, percentiles of each stage in milliseconds
+	synchronized String summary() {
+		StringBuilder sb = new StringBuilder();
+		int n = (int) Math.min(shown, WINDOW);
+		double fps = n > 1 ? (n - 1) * 1e9 / (shownTimes[(int) ((shown - 1) % WINDOW)] - shownTimes[(int) ((shown - n) % WINDOW)]) : 0.0;
+		sb.append(String.format("%5.1f fps of %.1f, %d shown, %d dropped%n", fps, nanosPerFrame > 0 ? 1e9 / nanosPerFrame : 0.0, shown, dropped));
+		sb.append(String.format("%-8s %7s %7s %7s %7s", "ms", "p50", "p95", "p99", "max"));
+		for (Stage stage : Stage.values()) {
+			int count = (int) Math.min(counts[stage.ordinal()], WINDOW);
+			long[] sorted = Arrays.copyOf(samples[stage.ordinal()], count);
+			Arrays.sort(sorted);
+			sb.append(String.format("%n%-8s %7.2f %7.2f %7.2f %7.2f", stage.name().toLowerCase(), 
+					percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99), percentile(sorted, 1.0)));
+		}
+		return sb.toString();
+	}
+	
+	private static double percentile(long[] sorted, double p) {
+		return sorted.length == 0 ? 0.0 : sorted[(int) Math.ceil(p * sorted.length) - (p > 0 ? 1 : 0)] / 1e6;
+	}
+}
+
+//flight recorder events of the playback pipeline, record with -XX:StartFlightRecording or jcmd <pid> JFR.start
+@Name("rawviewer.FrameRead")
+@jdk.jfr.Label("Frame Read")
+@Category({"RawViewer", "Playback"})
+@Description("Raw data of one frame read from the input")
+class FrameReadEvent extends Event {
+	
+	@jdk.jfr.Label("Frame")
+	long frame;
+	
+	@jdk.jfr.Label("Bytes")
+	@DataAmount
+	long bytes;
+}
+
+@Name("rawviewer.FrameConvert")
+@jdk.jfr.Label("Frame Convert")
+@Category({"RawViewer", "Playback"})
+@Description("One frame converted to argb, step is the decimation of reduced resolution playback")
+class FrameConvertEvent extends Event {
+	
+	@jdk.jfr.Label("Frame")
+	long frame;
+	
+	@jdk.jfr.Label("Step")
+	int step;
+}
+
+@Name("rawviewer.FrameUpload")
+@jdk.jfr.Label("Frame Upload")
+@Category({"RawViewer", "Playback"})
+@Description("Pixel buffer of one frame updated and set as image on the fx thread")
+class FrameUploadEvent extends Event {
+	
+	@jdk.jfr.Label("Frame")
+	long frame;
+}
+
+@Name("rawviewer.FrameDisplay")
+@jdk.jfr.Label("Frame Display Latency")
+@Category({"RawViewer", "Playback"})
+@Description("Time from handing a frame to the fx thread until it is on screen")
+class FrameDisplayEvent extends Event {
+	
+	@jdk.jfr.Label("Frame")
+	long frame;
+}
+
+@Name("rawviewer.FramesDropped")
+@jdk.jfr.Label("Frames Dropped")
+@Category({"RawViewer", "Playback"})
+@Description("Frames skipped because playback fell behind the clock")
+class FramesDroppedEvent extends Event {
+	
+	@jdk.jfr.Label("Next Frame")
+	long frame;
+	
+	@jdk.jfr.Label("Count")
+	long count;
+}
+
+//choose the decimation step for playback, the step is never finer than what the viewport can show
+//and is raised when converting a frame takes longer than the time per frame allows
+class ResolutionController {
+	
+	private static final int MAX_STEP = 16;
+	private static final double RAISE_LOAD = 0.85;	//raise the step when conversion takes this share of the frame time
+	private static final double LOWER_LOAD = 0.6;	//lower the step when the expected conversion time at the finer step stays below this share
+	
+	private final boolean isAdaptive;
+	private final int minStep;
+	private final long nanosPerFrame;
+	private volatile int step;
+	private long averageNanos; //only accessed by the convert stage
+	
+	ResolutionController(boolean isAdaptive, int w, int h, double viewportWidth, double viewportHeight, long nanosPerFrame) {
+		this.isAdaptive = isAdaptive;
+		this.nanosPerFrame = nanosPerFrame;
+		int viewportStep = viewportWidth > 0 && viewportHeight > 0 ? (int) Math.min(w / viewportWidth, h / viewportHeight) : 1;
+		this.minStep = isAdaptive ? Math.clamp(viewportStep, 1, MAX_STEP) : 1;
+		this.step = minStep;
+	}
+	
+	int step() {
+		return step;
+	}
+	
+	//adjust the step from a moving average of conversion times
+	void frameConverted(long nanos) {
+		averageNanos = averageNanos == 0 ? nanos : (averageNanos * 7 + nanos) / 8;
+		if (isAdaptive) {
+			double load = (double) averageNanos / nanosPerFrame;
+			double finerScale = step > 1 ? Math.pow((double) step / (step - 1), 2) : 0;
+			if (load > RAISE_LOAD && step < MAX_STEP) {
+				step++;
+				averageNanos = 0;
+				
+			} else if (step > minStep && load * finerScale < LOWER_LOAD) {
+				step--;
+				averageNanos = 0;
+			}
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return step == 1 ? "full res" : "1/" + step + " res";
+	}
+}
+
+//ring of images backed by direct pixel buffers, converters write straight into the buffer of an image that is not on screen
+//an image goes back to the free list after the fx thread has replaced it on screen
+class DisplayTargets {
+	
+	static final int COUNT = 3;
+	private static final long POLL_MILLIS = 50;
+	
+	final int w, h;
+	private final BlockingQueue<DisplayTarget> free = new ArrayBlockingQueue<>(COUNT);
+	private DisplayTarget displayed; //only accessed on the fx thread
+	
+	DisplayTargets(int w, int h) {
+		this.w = w;
+		this.h = h;
+		for (int i = 0; i < COUNT; i++) free.add(new DisplayTarget(this, w, h));
+	}
+	
+	boolean hasSize(int w, int h) {
+		return this.w == w && this.h == h;
+	}
+	
+	//wait for an image that is not on screen, returns null when cancelled while waiting
+	DisplayTarget take(BooleanSupplier isCancelled) throws InterruptedException {
+		DisplayTarget target = null;
+		while (target == null && isCancelled.getAsBoolean() == false) {
+			target = free.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+		}
+		return target;
+	}
+	
+	//give back an image that has not been shown
+	void release(DisplayTarget target) {
+		free.add(target);
+	}
+	
+	//on fx thread, mark the whole buffer as changed, show the image and release the image that was shown before
+	void show(DisplayTarget target, ImageView imageView) {
+		target.pixelBuffer.updateBuffer(_ -> null);
+		imageView.setImage(target.image);
+		if (displayed != null) free.add(displayed);
+		displayed = target;
+	}
+}
+
+//image backed by a direct buffer of argb pixels
+class DisplayTarget {
+	
+	final DisplayTargets owner;
+	final IntBuffer pixels;
+	final PixelBuffer<IntBuffer> pixelBuffer;
+	final WritableImage image;
+	long idx;
+	
+	DisplayTarget(DisplayTargets owner, int w, int h) {
+		this.owner = owner;
+		pixels = allocatePixels(w, h);
+		pixelBuffer = new PixelBuffer<>(w, h, pixels, PixelFormat.getIntArgbPreInstance());
+		image = new WritableImage(pixelBuffer);
+	}
+	
+	//pixels are fully opaque, so plain argb is the same as premultiplied argb
+	static IntBuffer allocatePixels(int w, int h) {
+		return ByteBuffer.allocateDirect(w * h * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+	}
+}
+
+//part of a frame in pixels at a level of detail, one pixel of the region covers lod x lod pixels of the frame
+//lod is a power of two so that tiles are reused while zooming, the region may extend beyond the frame
+record ViewRegion(int lod, long x0, long y0, int width, int height, boolean smooth) {
+	
+	//region for a view of the given size in device pixels, scale is device pixels per frame pixel
+	static ViewRegion of(int frameWidth, int frameHeight, double centerX, double centerY, double scale, int viewWidth, int viewHeight) {
+		int lod = Integer.highestOneBit(Math.clamp((long) (1.0 / scale), 1, 1 << 16));
+		double lodScale = scale * lod;
+		int width = (int) Math.max(Math.ceil(viewWidth / lodScale), 1);
+		int height = (int) Math.max(Math.ceil(viewHeight / lodScale), 1);
+		long x0 = Math.round(centerX * frameWidth / lod - width / 2.0);
+		long y0 = Math.round(centerY * frameHeight / lod - height / 2.0);
+		
+		//region pixels larger than screen pixels are shown without smoothing to see single pixels
+		return new ViewRegion(lod, x0, y0, width, height, lodScale <= 1.0);
+	}
+}
+
+//converted tiles of TILE x TILE region pixels, tiles of all frames and levels of detail of one source share the cache
+//the least recently used tiles are dropped when the cache is full
+class TileCache {
+	
+	static final int TILE = 256;
+	private static final int CAPACITY = 384; //tiles of 256 KiB each
+	
+	//input and settings the tiles were converted with
+	record Source(FrameSource input, FormatConverter converter, int w, int h, YuvMatrix matrix, String range) {}
+	
+	private record TileKey(long idx, int lod, long tx, long ty) {}
+	
+	private final Source source;
+	private final Map<TileKey, int[]> tiles = new LinkedHashMap<>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<TileKey, int[]> eldest) {
+			return size() > CAPACITY;
+		}
+	};
+	
+	TileCache(Source source) {
+		this.source = source;
+	}
+	
+	boolean hasSource(Source source) {
+		return this.source.equals(source);
+	}
+	
+	synchronized int size() {
+		return tiles.size();
+	}
+	
+	//fill dest with the region of the frame, missing tiles are converted in parallel
+	//returns the number of tiles converted
+	int compose(FormatConverter converter, YuvTable yuv, int w, int h, long idx, MemorySegment frame, ViewRegion region, 
+			IntBuffer dest, BooleanSupplier isCancelled) {
+		//tiles overlapping the region and the frame
+		int lod = region.lod();
+		long tilesX = (FormatConverter.decimatedSize(w, lod) + TILE - 1) / TILE;
+		long tilesY = (FormatConverter.decimatedSize(h, lod) + TILE - 1) / TILE;
+		long tx0 = Math.max(Math.floorDiv(region.x0(), TILE), 0);
+		long ty0 = Math.max(Math.floorDiv(region.y0(), TILE), 0);
+		long tx1 = Math.min(Math.floorDiv(region.x0() + region.width() - 1, TILE), tilesX - 1);
+		long ty1 = Math.min(Math.floorDiv(region.y0() + region.height() - 1, TILE), tilesY - 1);
+		
+		Map<TileKey, int[]> visible = new LinkedHashMap<>();
+		List<TileKey> missing = new ArrayList<>();
+		synchronized (this) {
+			for (long ty = ty0; ty <= ty1; ty++) {
+				for (long tx = tx0; tx <= tx1; tx++) {
+					TileKey key = new TileKey(idx, lod, tx, ty);
+					int[] tile = tiles.get(key);
+					visible.put(key, tile);
+					if (tile == null) missing.add(key);
+				}
+			}
+		}
+		
+		//one band per tile
+		int[][] converted = new int[missing.size()][];
+		ConverterPool.forEachBand(TILE * TILE, missing.size(), 1, (t0, t1) -> {
+			for (int t = t0; t < t1 && isCancelled.getAsBoolean() == false; t++) {
+				converted[t] = convertTile(converter, yuv, w, h, frame, missing.get(t));
+			}
+		});
+		if (isCancelled.getAsBoolean()) return 0;
+		synchronized (this) {
+			for (int t = 0; t < converted.length; t++) {
+				tiles.put(missing.get(t), converted[t]);
+				visible.put(missing.get(t), converted[t]);
+			}
+		}
+		
+		//parts of the region outside of the frame stay black
+		int rw = region.width();
+		for (int i = 0; i < rw * region.height(); i++) dest.put(i, 0xFF000000);
+		visible.forEach((key, tile) -> {
+			long tileX = key.tx() * TILE, tileY = key.ty() * TILE;
+			long x0 = Math.max(tileX, region.x0()), x1 = Math.min(tileX + TILE, region.x0() + rw);
+			long y0 = Math.max(tileY, region.y0()), y1 = Math.min(tileY + TILE, region.y0() + region.height());
+			for (long y = y0; y < y1; y++) {
+				dest.put((int) ((y - region.y0()) * rw + x0 - region.x0()), tile, (int) ((y - tileY) * TILE + x0 - tileX), (int) (x1 - x0));
+			}
+		});
+		return converted.length;
+	}
+	
+	//sample every lod-th pixel, only the pages of the mapped frame that are touched get read from disk
+	private static int[] convertTile(FormatConverter converter, YuvTable yuv, int w, int h, MemorySegment frame, TileKey key) {
+		int[] tile = new int[TILE * TILE];
+		int lod = key.lod();
+		for (int r = 0; r < TILE; r++) {
+			long y = (key.ty() * TILE + r) * lod;
+			for (int c = 0; c < TILE; c++) {
+				long x = (key.tx() * TILE + c) * lod;
+				tile[r * TILE + c] = x < w && y < h ? converter.sample(w, h, frame, (int) x, (int) y, yuv) : 0xFF000000;
+			}
+		}
+		return tile;
+	}
+}
+
+//schedule playback frames on fixed slots aligned to the wall clock
+//frames are dropped and shown from different threads, each counter has one writer only
+class FramePacer {
+	
+	private final long nanosPerFrame;
+	private final long startTime;
+	private volatile long framesShown, framesDropped, framesLate;
+	
+	FramePacer(long nanosPerFrame) {
+		this.nanosPerFrame = Math.max(nanosPerFrame, 1);
+		this.startTime = System.nanoTime();
+	}
+	
+	//slot that is due at this moment, slot 0 is the frame shown at start
+	long currentSlot() {
+		return (System.nanoTime() - startTime) / nanosPerFrame;
+	}
+	
+	//sleep until the given slot is due, returns immediately when the slot has already passed
+	void awaitSlot(long slot) {
+		long due = startTime + slot * nanosPerFrame;
+		long remaining;
+		while ((remaining = due - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(remaining);
+		}
+	}
+	
+	//frame was handed over to display, count it as late when it missed its slot by more than half a frame
+	void frameShown(long slot) {
+		framesShown++;
+		long due = startTime + slot * nanosPerFrame;
+		if (System.nanoTime() - due > nanosPerFrame / 2) framesLate++;
+	}
+	
+	void frameDropped(long count) {
+		framesDropped += count;
+	}
+	
+	//frames actually shown per second since start
+	double achievedFps() {
+		long elapsed = System.nanoTime() - startTime;
+		return elapsed > 0 ? framesShown * 1e9 / elapsed : 0.0;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%.1f fps, %d dropped, %d late", achievedFps(), framesDropped, framesLate);
+	}
+}
+
+//headless conversion of a raw file into a png sequence or packed rgb without starting the javafx toolkit
+//frames are copied from the mapped input and converted on a pool of workers, one frame per worker, output is written in frame order
+//start with: java -m RawViewer/application.BatchConverter input width height format output [options]
+class BatchConverter {
+	
+	private static final String USAGE = """
+			usage: BatchConverter <input> <width> <height> <format> <output> [options]
+			  output is a directory for png, a file for the raw layouts
+			  --to png|rgb24|bgr24|rgba  output layout, default png
+			  --matrix BT601|BT709|BT2020, --range full|limited
+			  --start <frame>, --count <frames>, --threads <n>, --level <0..9> png compression""";
+	
+	private static final long REPORT_NANOS = 1_000_000_000L;
+	
+	private final Path inputPath, outputPath;
+	private final FormatConverter converter;
+	private final int w, h;
+	private final String layout;
+	private final YuvTable yuv;
+	private long start = 0, count = Long.MAX_VALUE;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int level = Deflater.BEST_SPEED;
+	
+	//buffers reused by each worker thread
+	private final ThreadLocal<byte[]> rawBuffers;
+	private final ThreadLocal<IntBuffer> pixelBuffers;
+	
+	public static void main(String[] args) {
+		try {
+			BatchConverter batch = new BatchConverter(args);
+			batch.run();
+			
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(1);
+			
+		} catch (Exception e) {
+			System.err.println("conversion failed: " + e);
+			System.exit(2);
+		}
+	}
+	
+	BatchConverter(String[] args) {
+		if (args.length < 5) throw new IllegalArgumentException("missing arguments");
+		Map<String, FormatConverter> formats = RawViewer.loadFormats();
+		inputPath = Path.of(args[0]);
+		w = Integer.parseInt(args[1]);
+		h = Integer.parseInt(args[2]);
+		converter = formats.get(args[3]);
+		outputPath = Path.of(args[4]);
+		if (converter == null) throw new IllegalArgumentException("unknown format " + args[3] + ", available " + new TreeSet<>(formats.keySet()));
+		if (w <= 0 || h <= 0 || RawViewer.isFullFrameSupported(converter.frameSize(w, h), w, h) == false) throw new IllegalArgumentException("invalid frame size");
+		
+		String layout = "png";
+		YuvMatrix matrix = YuvMatrix.BT601;
+		boolean limitedRange = false;
+		for (int i = 5; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+				case "--to" -> layout = value;
+				case "--matrix" -> matrix = YuvMatrix.valueOf(value);
+				case "--range" -> limitedRange = value.equals("limited");
+				case "--start" -> start = Long.parseLong(value);
+				case "--count" -> count = Long.parseLong(value);
+				case "--threads" -> threads = Math.max(Integer.parseInt(value), 1);
+				case "--level" -> level = Math.clamp(Integer.parseInt(value), 0, 9);
+				default -> throw new IllegalArgumentException("unknown option " + args[i]);
+			}
+		}
+		if (List.of("png", "rgb24", "bgr24", "rgba").contains(layout) == false) throw new IllegalArgumentException("unknown output " + layout);
+		this.layout = layout;
+		this.yuv = new YuvTable(matrix, limitedRange);
+		
+		int siz = (int) converter.frameSize(w, h);
+		rawBuffers = ThreadLocal.withInitial(() -> new byte[siz]);
+		pixelBuffers = ThreadLocal.withInitial(() -> DisplayTarget.allocatePixels(w, h));
+	}
+	
+	void run() throws Exception {
+		long siz = converter.frameSize(w, h);
+		ExecutorService workers = Executors.newFixedThreadPool(threads, r -> Thread.ofPlatform().name("RawViewer Batch").daemon().unstarted(r));
+		try (Arena arena = Arena.ofShared(); FileChannel input = FileChannel.open(inputPath, StandardOpenOption.READ)) {
+			MemorySegment map = input.map(FileChannel.MapMode.READ_ONLY, 0, input.size(), arena);
+			long end = Math.min(input.size() / siz, start + Math.min(count, Long.MAX_VALUE - start));
+			if (start >= end) throw new IllegalArgumentException("no frames to convert");
+			
+			FileChannel output = null;
+			if (layout.equals("png")) Files.createDirectories(outputPath);
+			else output = FileChannel.open(outputPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			
+			//a window of frames is in flight so that workers never wait for the writer and memory stays bounded
+			ArrayDeque<Future<byte[]>> inFlight = new ArrayDeque<>();
+			long t0 = System.nanoTime(), reported = t0, written = start, bytesOut = 0;
+			try {
+				for (long idx = start; idx < end || inFlight.isEmpty() == false; ) {
+					if (idx < end && inFlight.size() < threads * 2) {
+						long i = idx++;
+						inFlight.add(workers.submit(() -> convertFrame(map.asSlice(siz * i, siz))));
+						
+					} else {
+						byte[] data = inFlight.poll().get();
+						if (output == null) Files.write(outputPath.resolve(String.format("frame_%06d.png", written)), data);
+						else for (ByteBuffer bb = ByteBuffer.wrap(data); bb.hasRemaining(); ) output.write(bb);
+						written++;
+						bytesOut += data.length;
+						long now = System.nanoTime();
+						if (now - reported > REPORT_NANOS) {
+							reported = now;
+							System.err.println(report(written - start, end - start, now - t0, bytesOut));
+						}
+					}
+				}
+				
+			} finally {
+				inFlight.forEach(f -> f.cancel(true));
+				if (output != null) output.close();
+			}
+			System.err.println(report(written - start, end - start, System.nanoTime() - t0, bytesOut));
+			
+		} finally {
+			workers.shutdownNow();
+		}
+	}
+	
+	private String report(long frames, long total, long nanos, long bytesOut) {
+		double seconds = nanos / 1e9;
+		return String.format("%d/%d frames, %.1f fps, %.1f MB/s in, %.1f MB/s out", frames, total, frames / seconds, 
+				frames * converter.frameSize(w, h) / seconds / 1e6, bytesOut / seconds / 1e6);
+	}
+	
+	//copy one frame out of the mapped file, convert on this thread and encode to the output layout
+	private byte[] convertFrame(MemorySegment frame) throws IOException {
+		byte[] raw = rawBuffers.get();
+		IntBuffer pixels = pixelBuffers.get();
+		MemorySegment.copy(frame, ValueLayout.JAVA_BYTE, 0, raw, 0, raw.length);
+		converter.convertRows(w, h, raw, pixels, 0, h, yuv);
+		return switch (layout) {
+			case "png" -> PngEncoder.encode(pixels, w, h, level);
+			case "rgb24" -> pack(pixels, 3, 16, 8, 0, -1);
+			case "bgr24" -> pack(pixels, 3, 0, 8, 16, -1);
+			default -> pack(pixels, 4, 16, 8, 0, 24);
+		};
+	}
+	
+	//pack argb pixels into bytes, shifts select the channel for each byte of a pixel, -1 omits the byte
+	private byte[] pack(IntBuffer pixels, int bytesPerPixel, int shift0, int shift1, int shift2, int shift3) {
+		byte[] out = new byte[w * h * bytesPerPixel];
+		for (int i = 0, o = 0; i < w * h; i++, o += bytesPerPixel) {
+			int argb = pixels.get(i);
+			out[o] = (byte) (argb >> shift0);
+			out[o + 1] = (byte) (argb >> shift1);
+			out[o + 2] = (byte) (argb >> shift2);
+			if (shift3 >= 0) out[o + 3] = (byte) (argb >> shift3);
+		}
+		return out;
+	}
+}
+
+//export of a frame range into a compressed video, frames are written into a raw pipe of an ffmpeg process
+//the command line follows FFmpegFrame.rawWriterBuilder(), which cannot be required because both modules contain package application
+//formats known to ffmpeg go into the pipe as they are stored without converting, other formats are converted to bgra first
+//a reader thread stays a few frames ahead so that reading and converting overlap with encoding
+class VideoExport {
+	
+	//ffmpeg names of the formats that are passed on as they are stored
+	static final Map<String, String> PIXEL_FORMATS = Map.ofEntries(
+			Map.entry("Y", "gray"), 
+			Map.entry("YUV420", "yuv420p"), 
+			Map.entry("YUV444", "yuv444p"), 
+			Map.entry("RGB24", "rgb24"), 
+			Map.entry("BGR24", "bgr24"), 
+			Map.entry("NV12", "nv12"), 
+			Map.entry("NV21", "nv21"), 
+			Map.entry("P010", "p010le"), 
+			Map.entry("YUV422P10", "yuv422p10le"), 
+			Map.entry("UYVY", "uyvy422"), 
+			Map.entry("YUYV", "yuyv422"), 
+			Map.entry("GRAY16", "gray16le"), 
+			Map.entry("BayerRGGB", "bayer_rggb8")
+			);
+	
+	//codecs offered for export and the pixel format of the video, null keeps the format of the input
+	static final List<String> CODECS = List.of("libx264", "libx265", "ffv1", "prores_ks");
+	
+	static String outputFormat(String codec) {
+		return switch (codec) {
+			case "libx264", "libx265" -> "yuv420p";
+			case "prores_ks" -> "yuv422p10le";
+			default -> null;
+		};
+	}
+	
+	static final String FFMPEG = System.getProperty("rawviewer.ffmpeg", "ffmpeg");
+	
+	private static final int QUEUE = 4;
+	private static final int OUTPUT_LINES = 20;
+	private static final long REPORT_NANOS = 500_000_000L;
+	
+	record Job(FrameSource input, FormatConverter converter, String format, int w, int h, double fps, YuvMatrix matrix, String range, 
+			long first, long count, String codec, Path output) {}
+	
+	private final Job job;
+	private final String pixelFormat;
+	private final int inSize, outSize;
+	private final Deque<String> output = new ArrayDeque<>();
+	
+	VideoExport(Job job) {
+		this.job = job;
+		
+		//subsampled formats of odd size are not passed on because ffmpeg may round the chroma size differently
+		String known = PIXEL_FORMATS.get(job.format());
+		RawLayout layout = job.converter().layout(job.w(), job.h());
+		boolean subsampled = layout == null || layout.c1() != null && (layout.c1().xShift() > 0 || layout.c1().yShift() > 0);
+		boolean even = job.w() % 2 == 0 && job.h() % 2 == 0;
+		this.pixelFormat = known != null && (even || subsampled == false) ? known : null;
+		this.inSize = Math.toIntExact(job.converter().frameSize(job.w(), job.h()));
+		this.outSize = pixelFormat != null ? inSize : job.w() * job.h() * 4;
+	}
+	
+	//true when raw frames go into the pipe without converting
+	boolean isNative() {
+		return pixelFormat != null;
+	}
+	
+	//ffmpeg command line, color range and matrix are given for yuv input, converted frames already are rgb
+	List<String> args() {
+		List<String> args = new ArrayList<>(List.of(
+				FFMPEG, "-hide_banner", "-nostats", "-f", "rawvideo", "-pix_fmt", isNative() ? pixelFormat : "bgra", 
+				"-s", job.w() + "x" + job.h(), "-framerate", String.valueOf(job.fps())));
+		RawLayout layout = job.converter().layout(job.w(), job.h());
+		if (isNative() && layout != null && layout.isRgb() == false) {
+			args.addAll(List.of("-color_range", job.range().equals(RawViewer.RANGE_LIMITED) ? "tv" : "pc"));
+			args.addAll(List.of("-colorspace", switch (job.matrix()) {
+				case BT601 -> "bt470bg";
+				case BT709 -> "bt709";
+				case BT2020 -> "bt2020nc";
+			}));
+		}
+		args.addAll(List.of("-i", "-", "-vcodec", job.codec()));
+		String pixFmt = outputFormat(job.codec());
+		if (pixFmt != null) {
+			args.addAll(List.of("-pix_fmt", pixFmt));
+			
+			//subsampled video needs an even size
+			if (job.w() % 2 != 0 || job.h() % 2 != 0) args.addAll(List.of("-vf", "crop=trunc(iw/2)*2:trunc(ih/2)*2"));
+		}
+		args.addAll(List.of(job.output().toString(), "-y"));
+		return args;
+	}
+	
+	//encode all frames, progress receives frames, rate and throughput, returns a summary
+	String run(BooleanSupplier isCancelled, Consumer<String> progress) throws Exception {
+		Process process = new ProcessBuilder(args()).start();
+		
+		//ffmpeg output is drained all the time so that ffmpeg never blocks on a full pipe
+		Thread drain = Thread.ofPlatform().name("RawViewer Export Output").daemon().start(() -> {
+			process.errorReader().lines().forEach(line -> {
+				synchronized (output) {
+					output.addLast(line);
+					if (output.size() > OUTPUT_LINES) output.removeFirst();
+				}
+			});
+		});
+		
+		BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(QUEUE), filled = new ArrayBlockingQueue<>(QUEUE);
+		for (int i = 0; i < QUEUE; i++) free.add(new byte[outSize]);
+		AtomicReference<Exception> failure = new AtomicReference<>();
+		Thread reader = Thread.ofPlatform().name("RawViewer Export").daemon().start(() -> read(free, filled, failure));
+		
+		long t0 = System.nanoTime(), reported = t0, written = 0;
+		try (OutputStream os = process.getOutputStream()) {
+			while (written < job.count()) {
+				byte[] frame = filled.poll(50, TimeUnit.MILLISECONDS);
+				if (isCancelled.getAsBoolean()) throw new InterruptedException("export cancelled");
+				if (failure.get() != null) throw failure.get();
+				if (frame == null) continue;
+				
+				try {
+					os.write(frame, 0, outSize);
+					
+				} catch (IOException e) {
+					process.waitFor(5, TimeUnit.SECONDS);
+					drain.join(1000);
+					throw new IOException("ffmpeg stopped reading: " + output(), e);
+				}
+				free.put(frame);
+				written++;
+				long now = System.nanoTime();
+				if (now - reported > REPORT_NANOS) {
+					reported = now;
+					progress.accept(report(written, now - t0));
+				}
+			}
+			
+		} catch (Exception e) {
+			process.destroy();
+			if (e instanceof InterruptedException) Files.deleteIfExists(job.output());
+			throw e;
+			
+		} finally {
+			reader.interrupt();
+		}
+		
+		//pipe is closed, wait for the encoder to finish the file
+		progress.accept(report(written, System.nanoTime() - t0) + ", finishing");
+		int exit = process.waitFor();
+		drain.join(1000);
+		if (exit != 0) throw new IOException("ffmpeg failed with exit value " + exit + ": " + output());
+		return report(written, System.nanoTime() - t0);
+	}
+	
+	//read frames in order, converting them when ffmpeg does not know the format
+	private void read(BlockingQueue<byte[]> free, BlockingQueue<byte[]> filled, AtomicReference<Exception> failure) {
+		try {
+			int w = job.w(), h = job.h();
+			byte[] raw = isNative() ? null : new byte[inSize];
+			YuvTable yuv = new YuvTable(job.matrix(), job.range().equals(RawViewer.RANGE_LIMITED));
+			for (long i = 0; i < job.count(); i++) {
+				byte[] frame = free.take();
+				long position = (job.first() + i) * inSize;
+				if (isNative()) {
+					job.input().read(frame, position, inSize);
+					
+				} else {
+					//argb ints in little endian order are bgra bytes
+					job.input().read(raw, position, inSize);
+					ConverterPool.convert(job.converter(), w, h, raw, ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer(), yuv);
+				}
+				filled.put(frame);
+			}
+			
+		} catch (InterruptedException e) {
+			//export finished or cancelled
+			
+		} catch (Exception e) {
+			failure.set(e);
+		}
+	}
+	
+	private String report(long frames, long nanos) {
+		double seconds = nanos / 1e9;
+		return String.format("Export %d/%d frames, %.1f fps, %.1f MB/s %s", frames, job.count(), frames / seconds, 
+				frames * (double) outSize / seconds / 1e6, isNative() ? pixelFormat : "bgra");
+	}
+	
+	//last lines written by ffmpeg
+	private String output() {
+		synchronized (output) {
+			return String.join("\n", output);
+		}
+	}
+}
+
+//headless benchmark of all registered converters on synthetic frames, run with java -m RawViewer/application.ConverterBenchmark
+//reports throughput of the parallel and the single threaded conversion and the bytes allocated per frame
+//every converter is first checked bit for bit against the scalar reference and its own sample() before it is timed
+class ConverterBenchmark {
+	
+	private static final String USAGE = """
+			usage: ConverterBenchmark [options]
+			  --formats <name,...>  default all registered formats
+			  --sizes odd,720p,1080p,4K,8K or <w>x<h>,...  default all five
+			  --seconds <s>  measuring time per converter and size, default 1""";
+	
+	private static final Map<String, int[]> SIZES = new LinkedHashMap<>();
+	static {
+		//odd width and height catch converters that only handle whole chroma groups, formats that need even sizes skip it
+		SIZES.put("odd", new int[] {641, 361});
+		SIZES.put("720p", new int[] {1280, 720});
+		SIZES.put("1080p", new int[] {1920, 1080});
+		SIZES.put("4K", new int[] {3840, 2160});
+		SIZES.put("8K", new int[] {7680, 4320});
+	}
+	
+	private static final long WARMUP_NANOS = 500_000_000L;
+	private static final int ORACLE_SAMPLES = 4096;
+	
+	private final Map<String, FormatConverter> formats = RawViewer.loadFormats();
+	private final Map<String, FormatConverter> references = new RawViewer.StandardFormats().formats();
+	private final YuvTable yuv = new YuvTable(YuvMatrix.BT601, false);
+	private final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	private List<String> names = new ArrayList<>(new TreeSet<>(formats.keySet()));
+	private Map<String, int[]> sizes = SIZES;
+	private long measureNanos = 1_000_000_000L;
+	
+	public static void main(String[] args) {
+		try {
+			ConverterBenchmark benchmark = new ConverterBenchmark(args);
+			System.exit(benchmark.run() ? 0 : 3);
+			
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+	}
+	
+	ConverterBenchmark(String[] args) {
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+				case "--formats" -> names = List.of(value.split(","));
+				case "--sizes" -> sizes = parseSizes(value);
+				case "--seconds" -> measureNanos = (long) (Double.parseDouble(value) * 1e9);
+				default -> throw new IllegalArgumentException("unknown option " + args[i]);
+			}
+		}
+		for (String name : names) {
+			if (formats.containsKey(name) == false) throw new IllegalArgumentException("unknown format " + name + ", available " + new TreeSet<>(formats.keySet()));
+		}
+	}
+	
+	private static Map<String, int[]> parseSizes(String value) {
+		Map<String, int[]> sizes = new LinkedHashMap<>();
+		for (String name : value.split(",")) {
+			int[] size = SIZES.get(name);
+			if (size == null) {
+				String[] wh = name.split("x");
+				if (wh.length != 2) throw new IllegalArgumentException("invalid size " + name);
+				size = new int[] {Integer.parseInt(wh[0]), Integer.parseInt(wh[1])};
+			}
+			sizes.put(name, size);
+		}
+		return sizes;
+	}
+	
+	//true when all converters match their reference
+	boolean run() {
+		boolean allCorrect = true;
+		System.out.printf("%-10s %-6s %-24s %12s %12s %14s  %s%n", "format", "size", "converter", "Mpx/s", "Mpx/s 1 thr", "B/frame", "oracle");
+		for (String name : names) {
+			FormatConverter converter = formats.get(name);
+			FormatConverter reference = references.getOrDefault(name, converter);
+			for (Map.Entry<String, int[]> entry : sizes.entrySet()) {
+				int w = entry.getValue()[0], h = entry.getValue()[1];
+				long siz = converter.frameSize(w, h);
+				if (RawViewer.isFullFrameSupported(siz, w, h) == false || (h % converter.rowAlignment()) != 0) {
+					System.out.printf("%-10s %-6s skipped, frame size not supported%n", name, entry.getKey());
+					continue;
+				}
+				byte[] buffer = new byte[(int) siz];
+				new Random(w * 31 + h).nextBytes(buffer);
+				IntBuffer pixels = DisplayTarget.allocatePixels(w, h);
+				
+				String oracle;
+				try {
+					oracle = check(reference, converter, w, h, buffer, pixels);
+					
+				} catch (RuntimeException e) {
+					oracle = "FAILED " + e;
+				}
+				allCorrect &= oracle.equals("ok");
+				if (oracle.startsWith("FAILED")) {
+					System.out.printf("%-10s %-6s %-24s %s%n", name, entry.getKey(), converter.getClass().getSimpleName(), oracle);
+					continue;
+				}
+				double parallel = measure(() -> converter.convert(w, h, buffer, pixels, yuv), w, h);
+				long allocated = allocatedBytes(() -> converter.convert(w, h, buffer, pixels, yuv));
+				double single = measure(() -> converter.convertRows(w, h, buffer, pixels, 0, h, yuv), w, h);
+				System.out.printf("%-10s %-6s %-24s %12.1f %12.1f %14d  %s%n", name, entry.getKey(), converter.getClass().getSimpleName(), 
+						parallel, single, allocated, oracle);
+			}
+		}
+		return allCorrect;
+	}
+	
+	//full frame against the scalar reference, also into a heap buffer as callers may pass one, then a spread of single pixels against sample()
+	private String check(FormatConverter reference, FormatConverter converter, int w, int h, byte[] buffer, IntBuffer pixels) {
+		IntBuffer expected = DisplayTarget.allocatePixels(w, h);
+		reference.convertRows(w, h, buffer, expected, 0, h, yuv);
+		converter.convert(w, h, buffer, pixels, yuv);
+		int mismatch = pixels.mismatch(expected);
+		if (mismatch >= 0) {
+			return String.format("MISMATCH at %d,%d expected %08x got %08x", mismatch % w, mismatch / w, expected.get(mismatch), pixels.get(mismatch));
+		}
+		IntBuffer heap = IntBuffer.allocate(w * h);
+		converter.convertRows(w, h, buffer, heap, 0, h, yuv);
+		mismatch = heap.mismatch(expected);
+		if (mismatch >= 0) {
+			return String.format("HEAP BUFFER MISMATCH at %d,%d expected %08x got %08x", mismatch % w, mismatch / w, expected.get(mismatch), heap.get(mismatch));
+		}
+		MemorySegment frame = MemorySegment.ofArray(buffer);
+		Random random = new Random(0);
+		for (int i = 0; i < ORACLE_SAMPLES; i++) {
+			int x = random.nextInt(w), y = random.nextInt(h);
+			int argb = converter.sample(w, h, frame, x, y, yuv);
+			if (argb != expected.get(y * w + x)) {
+				return String.format("SAMPLE MISMATCH at %d,%d expected %08x got %08x", x, y, expected.get(y * w + x), argb);
+			}
+		}
+		return "ok";
+	}
+	
+	//megapixels per second after a warmup, repeated until the measuring time has passed
+	private double measure(Runnable conversion, int w, int h) {
+		for (long t0 = System.nanoTime(); System.nanoTime() - t0 < WARMUP_NANOS; ) {
+			conversion.run();
+		}
+		long frames = 0, t0 = System.nanoTime(), nanos;
+		do {
+			conversion.run();
+			frames++;
+			nanos = System.nanoTime() - t0;
+		} while (nanos < measureNanos);
+		return (double) w * h * frames / nanos * 1e3;
+	}
+	
+	//bytes allocated by all threads during one conversion, includes the worker pool
+	private long allocatedBytes(Runnable conversion) {
+		final int frames = 8;
+		long before = totalAllocatedBytes();
+		for (int i = 0; i < frames; i++) {
+			conversion.run();
+		}
+		return Math.max(totalAllocatedBytes() - before, 0) / frames;
+	}
+	
+	private long totalAllocatedBytes() {
+		long sum = 0;
+		for (long bytes : threadBean.getThreadAllocatedBytes(threadBean.getAllThreadIds())) {
+			if (bytes > 0) sum += bytes;
+		}
+		return sum;
+	}
+}
+
+//minimal png encoder for 8 bit rgb images, rows use the sub filter
+class PngEncoder {
+	
+	private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+	private static final byte FILTER_SUB = 1;
+	
+	static byte[] encode(IntBuffer pixels, int w, int h, int level) throws IOException {
+		ByteArrayOutputStream png = new ByteArrayOutputStream(w * h + 1024);
+		DataOutputStream out = new DataOutputStream(png);
+		out.write(SIGNATURE);
+		
+		ByteBuffer header = ByteBuffer.allocate(13).putInt(w).putInt(h);
+		header.put((byte) 8).put((byte) 2).put((byte) 0).put((byte) 0).put((byte) 0);	//depth, color type rgb, compression, filter, no interlace
+		chunk(out, "IHDR", header.array());
+		
+		ByteArrayOutputStream idat = new ByteArrayOutputStream(w * h);
+		Deflater deflater = new Deflater(level);
+		try (DeflaterOutputStream zip = new DeflaterOutputStream(idat, deflater, 1 << 16)) {
+			byte[] row = new byte[1 + w * 3];
+			row[0] = FILTER_SUB;
+			for (int r = 0; r < h; r++) {
+				int left = 0;
+				for (int c = 0; c < w; c++) {
+					int argb = pixels.get(r * w + c);
+					row[1 + c * 3] = (byte) ((argb >> 16) - (left >> 16));
+					row[2 + c * 3] = (byte) ((argb >> 8) - (left >> 8));
+					row[3 + c * 3] = (byte) (argb - left);
+					left = argb;
+				}
+				zip.write(row);
+			}
+			
+		} finally {
+			deflater.end();
+		}
+		chunk(out, "IDAT", idat.toByteArray());
+		chunk(out, "IEND", new byte[0]);
+		return png.toByteArray();
+	}
+	
+	//length, type, data and crc over type and data
+	private static void chunk(DataOutputStream out, String type, byte[] data) throws IOException {
+		byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+		CRC32 crc = new CRC32();
+		crc.update(typeBytes);
+		crc.update(data);
+		out.writeInt(data.length);
+		out.write(typeBytes);
+		out.write(data);
+		out.writeInt((int) crc.getValue());
+	}
+}
+
+//shared pool to run converters on bands of rows
+//number of threads is taken from system property rawviewer.threads, defaults to the number of cores
+class ConverterPool {
+	
+	private static final int MIN_BAND_PIXELS = 64 * 1024; //do not split work any further below this size
+	private static final ForkJoinPool pool = new ForkJoinPool(Integer.getInteger("rawviewer.threads", Runtime.getRuntime().availableProcessors()));
+	
+	static int getParallelism() {
+		return pool.getParallelism();
+	}
+	
+	//run the action for parts 0 to parts - 1 in parallel on the pool
+	static void forEachPart(int parts, IntConsumer action) {
+		if (parts == 1) action.accept(0);
+		else pool.submit(() -> IntStream.range(0, parts).parallel().forEach(action)).join();
+	}
+	
+	static void convert(FormatConverter converter, int w, int h, byte[] buffer, IntBuffer dest, YuvTable yuv) {
+		forEachBand(w, h, converter.rowAlignment(), (r0, r1) -> converter.convertRows(w, h, buffer, dest, r0, r1, yuv));
+	}
+	
+	//split rows of the given width into bands and run the action on each band in parallel
+	static void forEachBand(int w, int h, int rowAlignment, BandAction action) {
+		int minRows = Math.max(MIN_BAND_PIXELS / Math.max(w, 1), 1);
+		if (pool.getParallelism() == 1 || h <= minRows) {
+			action.run(0, h);
+			
+		} else {
+			pool.invoke(new RowBand(action, rowAlignment, 0, h, minRows));
+		}
+	}
+	
+	//work on rows from r0 inclusive to r1 exclusive
+	interface BandAction {
+		void run(int r0, int r1);
+	}
+	
+	//split rows in halves at aligned boundaries until small enough
+	//tasks are never serialized
+	private static class RowBand extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final transient BandAction action;
+		private final int align, r0, r1, minRows;
+		
+		private RowBand(BandAction action, int align, int r0, int r1, int minRows) {
+			this.action = action;
+			this.align = align;
+			this.r0 = r0;
+			this.r1 = r1;
+			this.minRows = minRows;
+		}
+		
+		@Override
+		protected void compute() {
+			int mid = (r0 + (r1 - r0) / 2) / align * align;
+			if (r1 - r0 <= minRows || mid <= r0 || mid >= r1) {
+				action.run(r0, r1);
+				
+			} else {
+				invokeAll(
+						new RowBand(action, align, r0, mid, minRows), 
+						new RowBand(action, align, mid, r1, minRows));
+			}
+		}
+	}
+}
+
+//luma coefficients kr and kb of the standard color matrices
+enum YuvMatrix {
+	
+	BT601 ("BT.601", 0.299, 0.114),
+	BT709 ("BT.709", 0.2126, 0.0722),
+	BT2020 ("BT.2020", 0.2627, 0.0593),
+	;
+	
+	final String label;
+	final double kr, kb;
+	
+	private YuvMatrix(String label, double kr, double kb) {
+		this.label = label;
+		this.kr = kr;
+		this.kb = kb;
+	}
+	
+	@Override
+	public String toString() {
+		return label;
+	}
+}
+
+class FormatConverterY implements FormatConverter {
+
+	@Override
+	public void convertRows(int w, int h, byte[] buffer, IntBuffer dest, int r0, int r1, YuvTable yuv) {
+		convertPixels(w, h, buffer, dest, r0 * w, r1 * w, yuv);
+	}
+	
+	//convert pixels from i0 inclusive to i1 exclusive
+	void convertPixels(int w, int h, byte[] buffer, IntBuffer dest, int i0, int i1, YuvTable yuv) {
+		int[] yTab = yuv.yTab;
+		for (int i = i0; i < i1; i++) {
+			YuvTable.put(yTab[buffer[i] & 255], 0, 0, 0, dest, i);
+		}
+	}
+
+	@Override
+	public int sample(int w, int h, MemorySegment frame, int x, int y, YuvTable yuv) {
+		return yuv.argb(FormatConverter.u8(frame, (long) y * w + x), 128, 128);
+	}
+
+	@Override
+	public long frameSize(int w, int h) {
+		return (long) w * h;
+	}
+
+	@Override
+	public RawLayout layout(int w, int h) {
+		return new RawLayout(false, Plane.u8(0, 1, w, 0, 0), null, null);
+	}
+	
+}
+
+//planar 4:2:0, chroma is fetched once for each block of 2x2 pixels
+class FormatConverterYUV420 implements FormatConverter {
+
+	@Override
+	public void convertRows(int w, int h, byte[] buffer, IntBuffer dest, int r0, int r1, YuvTable yuv) {
+		for (int r = r0; r < r1; r += 2) {
+			convertBlocks(w, h, buffer, dest, r, r1, 0, yuv);
+		}
+	}
+	
+	//convert the pair of rows starting at row r from column c0 to the end of the rows
+	void convertBlocks(int w, int h, byte[] buffer, IntBuffer dest, int r, int r1, int c0, YuvTable yuv) {
+		int[] yTab = yuv.yTab, crTab = yuv.crTab, cguTab = yuv.cguTab, cgvTab = yuv.cgvTab, cbTab = yuv.cbTab;
+		int row0 = r * w;
+		int row1 = r + 1 < r1 ? row0 + w : -1;
+		int uRow = h * w + (r / 2) * w / 2;
+		int vRow = uRow + h * w / 4;
+		for (int c = c0; c < w; c += 2) {
+			int u = buffer[uRow + c / 2] & 255;
+			int v = buffer[vRow + c / 2] & 255;
+			int cr = crTab[v], cg = cguTab[u] + cgvTab[v], cb = cbTab[u];
+			YuvTable.put(yTab[buffer[row0 + c] & 255], cr, cg, cb, dest, row0 + c);
+			if (c + 1 < w) YuvTable.put(yTab[buffer[row0 + c + 1] & 255], cr, cg, cb, dest, row0 + c + 1);
+			if (row1 >= 0) {
+				YuvTable.put(yTab[buffer[row1 + c] & 255], cr, cg, cb, dest, row1 + c);
+				if (c + 1 < w) YuvTable.put(yTab[buffer[row1 + c + 1] & 255], cr, cg, cb, dest, row1 + c + 1);
+			}
+		}
+	}
+
+	@Override
+	public int rowAlignment() {
+		return 2;
+	}
+
+	@Override
+	public int sample(int w, int h, MemorySegment frame, int x, int y, YuvTable yuv) {
+		long plane = (long) w * h;
+		long i = plane + (y / 2) * (long) w / 2 + x / 2;
+		return yuv.argb(FormatConverter.u8(frame, (long) y * w + x), FormatConverter.u8(frame, i), FormatConverter.u8(frame, i + plane / 4));
+	}
+
+	@Override
+	public long frameSize(int w, int h) {
+		return (long) w * h * 3 / 2;
+	}
+
+	@Override
+	public RawLayout layout(int w, int h) {
+		long plane = (long) w * h;
+		return new RawLayout(false, Plane.u8(0, 1, w, 0, 0), Plane.u8(plane, 1, w / 2, 1, 1), Plane.u8(plane + plane / 4, 1, w / 2, 1, 1));
+	}
+	
+}
+
+class FormatConverterYUV444 implements FormatConverter {
+
+	@Override
+	public void convertRows(int w, int h, byte[] buffer, IntBuffer dest, int r0, int r1, YuvTable yuv) {
+		convertPixels(w, h, buffer, dest, r0 * w, r1 * w, yuv);
+	}
+	
+	//convert pixels from i0 inclusive to i1 exclusive
+	void convertPixels(int w, int h, byte[] buffer, IntBuffer dest, int i0, int i1, YuvTable yuv) {
+		int[] yTab = yuv.yTab, crTab = yuv.crTab, cguTab = yuv.cguTab, cgvTab = yuv.cgvTab, cbTab = yuv.cbTab;
+		int plane = w * h;
+		for (int i = i0; i < i1; i++) {
+			int u = buffer[i + plane] & 255;
+			int v = buffer[i + 2 * plane] & 255;
+			YuvTable.put(yTab[buffer[i] & 255], crTab[v], cguTab[u] + cgvTab[v], cbTab[u], dest, i);
+		}
+	}
+
+	@Override
+	public int sample(int w, int h, MemorySegment frame, int x, int y, YuvTable yuv) {
+		long plane = (long) w * h;
+		long i = (long) y * w + x;
+		return yuv.argb(FormatConverter.u8(frame, i), FormatConverter.u8(frame, i + plane), FormatConverter.u8(frame, i + 2 * plane));
+	}
+
+	@Override
+	public long frameSize(int w, int h) {
+		return (long) w * h * 3;
+	}
+
+	@Override
+	public RawLayout layout(int w, int h) {
+		long plane = (long) w * h;
+		return new RawLayout(false, Plane.u8(0, 1, w, 0, 0), Plane.u8(plane, 1, w, 0, 0), Plane.u8(2 * plane, 1, w, 0, 0));
+	}
 	
 }
 
 class FormatConverterRGB24 implements FormatConverter {
 
 	@Override
-	public void convert(Integer w, Integer h, byte[] buffer, byte[] dest) throws IOException {
-		for (int r = 0; r < h; r++) {
-			for (int c = 0; c < w; c++) {
-				int i = r * w + c;
-				dest[i * 4 + 0] = buffer[i * 3 + 2];
-				dest[i * 4 + 1] = buffer[i * 3 + 1];
-				dest[i * 4 + 2] = buffer[i * 3 + 0];
-				dest[i * 4 + 3] = (byte) 255;
-			}
+	public void convertRows(int w, int h, byte[] buffer, IntBuffer dest, int r0, int r1, YuvTable yuv) {
+		convertPixels(buffer, dest, r0 * w, r1 * w);
+	}
+	
+	//convert pixels from i0 inclusive to i1 exclusive
+	void convertPixels(byte[] buffer, IntBuffer dest, int i0, int i1) {
+		for (int i = i0; i < i1; i++) {
+			int r = buffer[i * 3 + 0] & 255;
+			int g = buffer[i * 3 + 1] & 255;
+			int b = buffer[i * 3 + 2] & 255;
+			dest.put(i, 0xFF000000 | r << 16 | g << 8 | b);
 		}
 	}
 
 	@Override
-	public int frameSize(int w, int h) {
-		return w * h * 3;
+	public int sample(int w, int h, MemorySegment frame, int x, int y, YuvTable yuv) {
+		long i = ((long) y * w + x) * 3;
+		return 0xFF000000 | FormatConverter.u8(frame, i) << 16 | FormatConverter.u8(frame, i + 1) << 8 | FormatConverter.u8(frame, i + 2);
+	}
+
+	@Override
+	public long frameSize(int w, int h) {
+		return (long) w * h * 3;
+	}
+
+	@Override
+	public RawLayout layout(int w, int h) {
+		return new RawLayout(true, Plane.u8(0, 3, 3L * w, 0, 0), Plane.u8(1, 3, 3L * w, 0, 0), Plane.u8(2, 3, 3L * w, 0, 0));
 	}
 	
 }
@@ -582,65 +4555,707 @@ class FormatConverterRGB24 implements FormatConverter {
 class FormatConverterBGR24 implements FormatConverter {
 	
 	@Override
-	public void convert(Integer w, Integer h, byte[] buffer, byte[] dest) throws IOException {
-		for (int r = 0; r < h; r++) {
-			for (int c = 0; c < w; c++) {
-				int i = r * w + c;
-				dest[i * 4 + 0] = buffer[i * 3 + 0];
-				dest[i * 4 + 1] = buffer[i * 3 + 1];
-				dest[i * 4 + 2] = buffer[i * 3 + 2];
-				dest[i * 4 + 3] = (byte) 255;
+	public void convertRows(int w, int h, byte[] buffer, IntBuffer dest, int r0, int r1, YuvTable yuv) {
+		convertPixels(buffer, dest, r0 * w, r1 * w);
+	}
+	
+	//convert pixels from i0 inclusive to i1 exclusive
+	void convertPixels(byte[] buffer, IntBuffer dest, int i0, int i1) {
+		for (int i = i0; i < i1; i++) {
+			int b = buffer[i * 3 + 0] & 255;
+			int g = buffer[i * 3 + 1] & 255;
+			int r = buffer[i * 3 + 2] & 255;
+			dest.put(i, 0xFF000000 | r << 16 | g << 8 | b);
+		}
+	}
+	
+	@Override
+	public int sample(int w, int h, MemorySegment frame, int x, int y, YuvTable yuv) {
+		long i = ((long) y * w + x) * 3;
+		return 0xFF000000 | FormatConverter.u8(frame, i + 2) << 16 | FormatConverter.u8(frame, i + 1) << 8 | FormatConverter.u8(frame, i);
+	}
+
+	@Override
+	public long frameSize(int w, int h) {
+		return (long) w * h * 3;
+	}
+
+	@Override
+	public RawLayout layout(int w, int h) {
+		return new RawLayout(true, Plane.u8(2, 3, 3L * w, 0, 0), Plane.u8(1, 3, 3L * w, 0, 0), Plane.u8(0, 3, 3L * w, 0, 0));
+	}
+	
+}
+
+//semi planar 4:2:0 with interleaved chroma, chroma is fetched once for each block of 2x2 pixels
+abstract class FormatConverterSemiPlanar implements FormatConverter {
+	
+	//position of u and v within one interleaved chroma pair
+	final int uPos, vPos;
+	
+	FormatConverterSemiPlanar(int uPos, int vPos) {
+		this.uPos = uPos;
+		this.vPos = vPos;
+	}
+
+	@Override
+	public void convertRows(int w, int h, byte[] buffer, IntBuffer dest, int r0, int r1, YuvTable yuv) {
+		for (int r = r0; r < r1; r += 2) {
+			convertBlocks(w, h, buffer, dest, r, r1, 0, yuv);
+		}
+	}
+	
+	//convert the pair of rows starting at row r from column c0 to the end of the rows
+	void convertBlocks(int w, int h, byte[] buffer, IntBuffer dest, int r, int r1, int c0, YuvTable yuv) {
+		int[] yTab = yuv.yTab, crTab = yuv.crTab, cguTab = yuv.cguTab, cgvTab = yuv.cgvTab, cbTab = yuv.cbTab;
+		int row0 = r * w;
+		int row1 = r + 1 < r1 ? row0 + w : -1;
+		int uvRow = h * w + (r / 2) * w;
+		for (int c = c0; c < w; c += 2) {
+			int u = buffer[uvRow + c + uPos] & 255;
+			int v = buffer[uvRow + c + vPos] & 255;
+			int cr = crTab[v], cg = cguTab[u] + cgvTab[v], cb = cbTab[u];
+			YuvTable.put(yTab[buffer[row0 + c] & 255], cr, cg, cb, dest, row0 + c);
+			if (c + 1 < w) YuvTable.put(yTab[buffer[row0 + c + 1] & 255], cr, cg, cb, dest, row0 + c + 1);
+			if (row1 >= 0) {
+				YuvTable.put(yTab[buffer[row1 + c] & 255], cr, cg, cb, dest, row1 + c);
+				if (c + 1 < w) YuvTable.put(yTab[buffer[row1 + c + 1] & 255], cr, cg, cb, dest, row1 + c + 1);
+			}
+		}
+	}
+	
+	@Override
+	public int rowAlignment() {
+		return 2;
+	}
+
+	@Override
+	public int sample(int w, int h, MemorySegment frame, int x, int y, YuvTable yuv) {
+		long i = (long) w * h + (y / 2) * (long) w + (x / 2) * 2;
+		return yuv.argb(FormatConverter.u8(frame, (long) y * w + x), FormatConverter.u8(frame, i + uPos), FormatConverter.u8(frame, i + vPos));
+	}
+
+	@Override
+	public long frameSize(int w, int h) {
+		return (long) w * h * 3 / 2;
+	}
+
+	@Override
+	public RawLayout layout(int w, int h) {
+		long plane = (long) w * h;
+		return new RawLayout(false, Plane.u8(0, 1, w, 0, 0), Plane.u8(plane + uPos, 2, w, 1, 1), Plane.u8(plane + vPos, 2, w, 1, 1));
+	}
+}
+
+class FormatConverterNV12 extends FormatConverterSemiPlanar {
+
+	FormatConverterNV12() {
+		super(0, 1);
+	}
+	
+}
+
+class FormatConverterNV21 extends FormatConverterSemiPlanar {
+	
+	FormatConverterNV21() {
+		super(1, 0);
+	}
+	
+}
+
+//16 bit little endian samples, read through a view of a byte array or from a memory segment
+final class LittleEndian16 {
+	
+	private static final VarHandle ARRAY_VIEW = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final ValueLayout.OfShort LAYOUT = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+	
+	//unsigned sample at the given byte offset
+	static int get(byte[] buffer, int offset) {
+		return (short) ARRAY_VIEW.get(buffer, offset) & 0xFFFF;
+	}
+	
+	static int get(MemorySegment frame, long offset) {
+		return frame.get(LAYOUT, offset) & 0xFFFF;
+	}
+}
+
+//16 bit luma, the upper 8 bits are shown
+class FormatConverterGray16 implements FormatConverter {
+
+	@Override
+	public void convertRows(int w, int h, byte[] buffer, IntBuffer dest, int r0, int r1, YuvTable yuv) {
+		int[] yTab = yuv.yTab;
+		for (int i = r0 * w; i < r1 * w; i++) {
+			YuvTable.put(yTab[LittleEndian16.get(buffer, 2 * i) >> 8], 0, 0, 0, dest, i);
+		}
+	}
+
+	@Override
+	public int sample(int w, int h, MemorySegment frame, int x, int y, YuvTable yuv) {
+		return yuv.argb(LittleEndian16.get(frame, 2 * ((long) y * w + x)) >> 8, 128, 128);
+	}
+
+	@Override
+	public long frameSize(int w, int h) {
+		return (long) w * h * 2;
+	}
+
+	@Override
+	public RawLayout layout(int w, int h) {
+		return new RawLayout(false, Plane.u16(0, 2, 2L * w, 0, 0, 8), null, null);
+	}
+}
+
+//semi planar 4:2:0 with 10 bit samples in the upper bits of 16 bit words, chroma is fetched once for each block of 2x2 pixels
+class FormatConverterP010 implements FormatConverter {
+
+	@Override
+	public void convertRows(int w, int h, byte[] buffer, IntBuffer dest, int r0, int r1, YuvTable yuv) {
+		int[] yTab = yuv.yTab, crTab = yuv.crTab, cguTab = yuv.cguTab, cgvTab = yuv.cgvTab, cbTab = yuv.cbTab;
+		for (int r = r0; r < r1; r += 2) {
+			int row0 = r * w;
+			int row1 = r + 1 < r1 ? row0 + w : -1;
+			int uvRow = h * w + (r / 2) * w;
+			for (int c = 0; c < w; c += 2) {
+				int u = LittleEndian16.get(buffer, 2 * (uvRow + c)) >> 8;
+				int v = LittleEndian16.get(buffer, 2 * (uvRow + c + 1)) >> 8;
+				int cr = crTab[v], cg = cguTab[u] + cgvTab[v], cb = cbTab[u];
+				YuvTable.put(yTab[LittleEndian16.get(buffer, 2 * (row0 + c)) >> 8], cr, cg, cb, dest, row0 + c);
+				if (c + 1 < w) YuvTable.put(yTab[LittleEndian16.get(buffer, 2 * (row0 + c + 1)) >> 8], cr, cg, cb, dest, row0 + c + 1);
+				if (row1 >= 0) {
+					YuvTable.put(yTab[LittleEndian16.get(buffer, 2 * (row1 + c)) >> 8], cr, cg, cb, dest, row1 + c);
+					if (c + 1 < w) YuvTable.put(yTab[LittleEndian16.get(buffer, 2 * (row1 + c + 1)) >> 8], cr, cg, cb, dest, row1 + c + 1);
+				}
 			}
 		}
 	}
 	
 	@Override
-	public int frameSize(int w, int h) {
-		return w * h * 3;
+	public int rowAlignment() {
+		return 2;
+	}
+
+	@Override
+	public int sample(int w, int h, MemorySegment frame, int x, int y, YuvTable yuv) {
+		long i = (long) w * h + (y / 2) * (long) w + (x / 2) * 2;
+		return yuv.argb(LittleEndian16.get(frame, 2 * ((long) y * w + x)) >> 8, LittleEndian16.get(frame, 2 * i) >> 8, LittleEndian16.get(frame, 2 * i + 2) >> 8);
+	}
+
+	@Override
+	public long frameSize(int w, int h) {
+		return (long) w * h * 3;
+	}
+
+	@Override
+	public RawLayout layout(int w, int h) {
+		long plane = 2L * w * h;
+		return new RawLayout(false, Plane.u16(0, 2, 2L * w, 0, 0, 8), Plane.u16(plane, 4, 2L * w, 1, 1, 8), Plane.u16(plane + 2, 4, 2L * w, 1, 1, 8));
+	}
+}
+
+//planar 4:2:2 with 10 bit samples in the lower bits of 16 bit words, one chroma sample for each pair of pixels in a row
+class FormatConverterYUV422P10 implements FormatConverter {
+
+	@Override
+	public void convertRows(int w, int h, byte[] buffer, IntBuffer dest, int r0, int r1, YuvTable yuv) {
+		int[] yTab = yuv.yTab, crTab = yuv.crTab, cguTab = yuv.cguTab, cgvTab = yuv.cgvTab, cbTab = yuv.cbTab;
+		int cw = (w + 1) / 2;
+		for (int r = r0; r < r1; r++) {
+			int row = r * w;
+			int uRow = h * w + r * cw;
+			int vRow = uRow + h * cw;
+			for (int c = 0; c < w; c += 2) {
+				int u = to8(LittleEndian16.get(buffer, 2 * (uRow + c / 2)));
+				int v = to8(LittleEndian16.get(buffer, 2 * (vRow + c / 2)));
+				int cr = crTab[v], cg = cguTab[u] + cgvTab[v], cb = cbTab[u];
+				YuvTable.put(yTab[to8(LittleEndian16.get(buffer, 2 * (row + c)))], cr, cg, cb, dest, row + c);
+				if (c + 1 < w) YuvTable.put(yTab[to8(LittleEndian16.get(buffer, 2 * (row + c + 1)))], cr, cg, cb, dest, row + c + 1);
+			}
+		}
 	}
 	
+	//10 bit sample to 8 bits, values out of range are clipped
+	private static int to8(int value) {
+		return Math.min(value, 1023) >> 2;
+	}
+
+	@Override
+	public int sample(int w, int h, MemorySegment frame, int x, int y, YuvTable yuv) {
+		long cw = (w + 1) / 2;
+		long u = (long) w * h + y * cw + x / 2;
+		long v = u + h * cw;
+		return yuv.argb(to8(LittleEndian16.get(frame, 2 * ((long) y * w + x))), to8(LittleEndian16.get(frame, 2 * u)), to8(LittleEndian16.get(frame, 2 * v)));
+	}
+
+	@Override
+	public long frameSize(int w, int h) {
+		return ((long) w * h + 2L * ((w + 1) / 2) * h) * 2;
+	}
+
+	@Override
+	public RawLayout layout(int w, int h) {
+		long plane = 2L * w * h, cw = (w + 1) / 2;
+		return new RawLayout(false, Plane.u16(0, 2, 2L * w, 0, 0, 2), Plane.u16(plane, 2, 2 * cw, 1, 0, 2), Plane.u16(plane + 2 * cw * h, 2, 2 * cw, 1, 0, 2));
+	}
 }
 
-class FormatConverterNV12 implements FormatConverter {
+//packed 4:2:2, each pair of pixels is stored in a group of four bytes holding two luma samples and one pair of chroma samples
+abstract class FormatConverterPacked422 implements FormatConverter {
+	
+	//position of the first luma sample and of u and v within a group, the second luma sample follows at yPos + 2
+	final int yPos, uPos, vPos;
+	
+	FormatConverterPacked422(int yPos, int uPos, int vPos) {
+		this.yPos = yPos;
+		this.uPos = uPos;
+		this.vPos = vPos;
+	}
+	
+	//bytes per row, a row of odd width ends with a complete group whose second luma sample is padding
+	static int rowStride(int w) {
+		return (w + 1) / 2 * 4;
+	}
 
 	@Override
-	public void convert(Integer w, Integer h, byte[] buffer, byte[] dest) throws IOException {
-		for (int r = 0; r < h; r++) {
-			for (int c = 0; c < w; c++) {
-				int offset = r * w + c;
-				int rr = r / 2;
-				int cc = c / 2;
-				int i = h * w + rr * w + cc * 2;
-				yuvToRgb(buffer[offset], buffer[i], buffer[i + 1], dest, offset);
+	public void convertRows(int w, int h, byte[] buffer, IntBuffer dest, int r0, int r1, YuvTable yuv) {
+		int[] yTab = yuv.yTab, crTab = yuv.crTab, cguTab = yuv.cguTab, cgvTab = yuv.cgvTab, cbTab = yuv.cbTab;
+		int stride = rowStride(w);
+		for (int r = r0; r < r1; r++) {
+			int row = r * w;
+			for (int c = 0; c < w; c += 2) {
+				int group = r * stride + c * 2;
+				int u = buffer[group + uPos] & 255;
+				int v = buffer[group + vPos] & 255;
+				int cr = crTab[v], cg = cguTab[u] + cgvTab[v], cb = cbTab[u];
+				YuvTable.put(yTab[buffer[group + yPos] & 255], cr, cg, cb, dest, row + c);
+				if (c + 1 < w) YuvTable.put(yTab[buffer[group + yPos + 2] & 255], cr, cg, cb, dest, row + c + 1);
 			}
 		}
 	}
 
 	@Override
-	public int frameSize(int w, int h) {
-		return w * h * 3 / 2;
+	public int sample(int w, int h, MemorySegment frame, int x, int y, YuvTable yuv) {
+		long group = (long) y * rowStride(w) + (x & ~1) * 2;
+		return yuv.argb(FormatConverter.u8(frame, group + yPos + (x & 1) * 2), FormatConverter.u8(frame, group + uPos), FormatConverter.u8(frame, group + vPos));
+	}
+
+	@Override
+	public long frameSize(int w, int h) {
+		return (long) rowStride(w) * h;
+	}
+
+	@Override
+	public RawLayout layout(int w, int h) {
+		long stride = rowStride(w);
+		return new RawLayout(false, Plane.u8(yPos, 2, stride, 0, 0), Plane.u8(uPos, 4, stride, 1, 0), Plane.u8(vPos, 4, stride, 1, 0));
+	}
+}
+
+class FormatConverterUYVY extends FormatConverterPacked422 {
+	
+	FormatConverterUYVY() {
+		super(1, 0, 2);
 	}
+}
+
+class FormatConverterYUYV extends FormatConverterPacked422 {
 	
+	FormatConverterYUYV() {
+		super(0, 1, 3);
+	}
 }
 
-class FormatConverterNV21 implements FormatConverter {
+//8 bit bayer mosaic with red top left, green top right and bottom left, blue bottom right in each block of 2x2 pixels
+//all pixels of a block get the red, mean green and blue values of that block
+class FormatConverterBayerRGGB implements FormatConverter {
+
+	@Override
+	public void convertRows(int w, int h, byte[] buffer, IntBuffer dest, int r0, int r1, YuvTable yuv) {
+		for (int r = r0; r < r1; r += 2) {
+			int row0 = r * w;
+			int row1 = r + 1 < h ? row0 + w : row0;
+			for (int c = 0; c < w; c += 2) {
+				int c1 = c + 1 < w ? c + 1 : c;
+				int argb = argb(buffer[row0 + c], buffer[row0 + c1], buffer[row1 + c], buffer[row1 + c1]);
+				dest.put(row0 + c, argb);
+				if (c + 1 < w) dest.put(row0 + c + 1, argb);
+				if (r + 1 < r1) {
+					dest.put(row1 + c, argb);
+					if (c + 1 < w) dest.put(row1 + c + 1, argb);
+				}
+			}
+		}
+	}
+	
+	private static int argb(byte red, byte green0, byte green1, byte blue) {
+		int g = ((green0 & 255) + (green1 & 255) + 1) >> 1;
+		return 0xFF000000 | (red & 255) << 16 | g << 8 | (blue & 255);
+	}
 	
 	@Override
-	public void convert(Integer w, Integer h, byte[] buffer, byte[] dest) throws IOException {
-		for (int r = 0; r < h; r++) {
-			for (int c = 0; c < w; c++) {
-				int offset = r * w + c;
-				int rr = r / 2;
-				int cc = c / 2;
-				int i = h * w + rr * w + cc * 2;
-				yuvToRgb(buffer[offset], buffer[i + 1], buffer[i], dest, offset);
+	public int rowAlignment() {
+		return 2;
+	}
+
+	@Override
+	public int sample(int w, int h, MemorySegment frame, int x, int y, YuvTable yuv) {
+		long row0 = (long) (y & ~1) * w;
+		long row1 = (y | 1) < h ? row0 + w : row0;
+		int c = x & ~1;
+		int c1 = c + 1 < w ? c + 1 : c;
+		return argb(frame.get(ValueLayout.JAVA_BYTE, row0 + c), frame.get(ValueLayout.JAVA_BYTE, row0 + c1), 
+				frame.get(ValueLayout.JAVA_BYTE, row1 + c), frame.get(ValueLayout.JAVA_BYTE, row1 + c1));
+	}
+
+	@Override
+	public long frameSize(int w, int h) {
+		return (long) w * h;
+	}
+}
+
+//use the vector api implementations of the converters when module jdk.incubator.vector is present and the cpu has wide vectors,
+//each vector converter must produce the same output as its scalar counterpart bit for bit, otherwise the scalar converter is used
+class ConverterSelector {
+	
+	private static final boolean VECTOR_ENABLED = Boolean.getBoolean("rawviewer.scalar") == false 
+			&& ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+	
+	static FormatConverter select(FormatConverter scalar) {
+		if (VECTOR_ENABLED) {
+			try {
+				FormatConverter vector = VectorKernels.isSupported() ? VectorKernels.converterFor(scalar) : null;
+				if (vector != null && isBitExact(scalar, vector)) return vector;
+				
+			} catch (LinkageError e) {
+				//vector api not usable, stay with scalar code
+			}
+		}
+		return scalar;
+	}
+	
+	//compare both converters on random data, sizes include partial vectors at the end of rows and buffers
+	//the vector converter must give the same pixels in direct buffers and in heap buffers, which callers may pass as well
+	static boolean isBitExact(FormatConverter scalar, FormatConverter vector) {
+		Random random = new Random(0);
+		int[][] sizes = { {64, 32}, {334, 18}, {18, 6} };
+		for (int[] size : sizes) {
+			int w = size[0], h = size[1];
+			byte[] buffer = new byte[(int) scalar.frameSize(w, h)];
+			random.nextBytes(buffer);
+			for (YuvMatrix matrix : YuvMatrix.values()) {
+				for (boolean limitedRange : new boolean[] {false, true}) {
+					YuvTable yuv = new YuvTable(matrix, limitedRange);
+					IntBuffer expected = DisplayTarget.allocatePixels(w, h);
+					IntBuffer actual = DisplayTarget.allocatePixels(w, h);
+					IntBuffer heap = IntBuffer.allocate(w * h);
+					scalar.convertRows(w, h, buffer, expected, 0, h, yuv);
+					try {
+						vector.convertRows(w, h, buffer, actual, 0, h, yuv);
+						vector.convertRows(w, h, buffer, heap, 0, h, yuv);
+						
+					} catch (RuntimeException e) {
+						System.err.println("vector converter " + vector.getClass().getSimpleName() + " fails with " + e + ", using scalar");
+						return false;
+					}
+					if (expected.equals(actual) == false || expected.equals(heap) == false) {
+						System.err.println("vector converter " + vector.getClass().getSimpleName() + " differs from scalar, using scalar");
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+}
+
+//building blocks for the vector converters, only loaded when jdk.incubator.vector is present
+//int lanes hold one pixel each, pixels are computed with the same integer arithmetic as the lookup tables in YuvTable
+class VectorKernels {
+	
+	static final VectorSpecies<Integer> INT = IntVector.SPECIES_PREFERRED.vectorBitSize() >= 256 ? IntVector.SPECIES_PREFERRED : IntVector.SPECIES_256;
+	static final VectorSpecies<Byte> BYTE = VectorSpecies.of(byte.class, VectorShape.forBitSize(INT.vectorBitSize() / 4));
+	static final VectorSpecies<Byte> BGRA = VectorSpecies.of(byte.class, INT.vectorShape());
+	static final int LANES = INT.length();
+	
+	private static final VectorSpecies<Short> PAIRS = VectorSpecies.of(short.class, BYTE.vectorShape());
+	
+	//only use vectors when the hardware supports them natively, byte shuffles assume argb ints in little endian order
+	static boolean isSupported() {
+		return IntVector.SPECIES_PREFERRED.vectorBitSize() >= 256 && ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+	}
+	
+	//vectors are stored through a memory segment of the buffer, which must be direct with ints in native order
+	//the segment starts at the position of the buffer while rows are addressed from index 0
+	static boolean isStorable(IntBuffer dest) {
+		return dest.isDirect() && dest.order() == ByteOrder.nativeOrder() && dest.position() == 0 && dest.isReadOnly() == false;
+	}
+	
+	static FormatConverter converterFor(FormatConverter scalar) {
+		return switch (scalar) {
+			case FormatConverterY _ -> new FormatConverterYVector();
+			case FormatConverterYUV420 _ -> new FormatConverterYUV420Vector();
+			case FormatConverterYUV444 _ -> new FormatConverterYUV444Vector();
+			case FormatConverterRGB24 _ -> new FormatConverterRGB24Vector();
+			case FormatConverterBGR24 _ -> new FormatConverterBGR24Vector();
+			case FormatConverterNV12 _ -> new FormatConverterNV12Vector();
+			case FormatConverterNV21 _ -> new FormatConverterNV21Vector();
+			default -> null;
+		};
+	}
+	
+	//unsigned bytes to int lanes
+	static IntVector load(byte[] buffer, int offset) {
+		return widen(ByteVector.fromArray(BYTE, buffer, offset));
+	}
+	
+	
+	private static IntVector widen(ByteVector bytes) {
+		return (IntVector) bytes.convertShape(VectorOperators.ZERO_EXTEND_B2I, INT, 0);
+	}
+	
+	//same as yTab in YuvTable
+	static IntVector luma(IntVector y, YuvTable yuv) {
+		return y.sub(yuv.yOffset).mul(yuv.yMul).add(1 << (YuvTable.SHIFT - 1));
+	}
+	
+	//convert and store pixels from luma and chroma, same as YuvTable.put()
+	static void put(IntVector y, IntVector u, IntVector v, MemorySegment dest, int pixelOffset, YuvTable yuv) {
+		IntVector cu = u.sub(128), cv = v.sub(128);
+		IntVector cr = cv.mul(yuv.crMul);
+		IntVector cg = cu.mul(yuv.cguMul).add(cv.mul(yuv.cgvMul));
+		IntVector cb = cu.mul(yuv.cbMul);
+		put(luma(y, yuv), cr, cg, cb, dest, pixelOffset);
+	}
+	
+	//store argb pixels from luma and precomputed chroma terms
+	static void put(IntVector y, IntVector cr, IntVector cg, IntVector cb, MemorySegment dest, int pixelOffset) {
+		IntVector b = clip(y.add(cb));
+		IntVector g = clip(y.sub(cg));
+		IntVector r = clip(y.add(cr));
+		IntVector argb = b.or(g.lanewise(VectorOperators.LSHL, 8)).or(r.lanewise(VectorOperators.LSHL, 16)).or(0xFF000000);
+		argb.intoMemorySegment(dest, pixelOffset * 4L, ByteOrder.nativeOrder());
+	}
+	
+	private static IntVector clip(IntVector value) {
+		return value.lanewise(VectorOperators.ASHR, YuvTable.SHIFT).max(0).min(255);
+	}
+	
+	//convert a pair of rows of planar 4:2:0 data from column 0, row1 is -1 for a single row, returns the first column that was not converted
+	//the whole loop is in one method as vectors passed to methods that are not inlined are allocated on the heap,
+	//chroma bytes are widened to shorts holding the byte twice, which repeats each chroma sample for two pixels without rearranging lanes
+	static int convert420(byte[] buffer, MemorySegment dest, int w, int row0, int row1, int uRow, int vRow, YuvTable yuv) {
+		int c = 0;
+		for (; c + LANES <= w && Math.max(uRow, vRow) + c / 2 + BYTE.length() <= buffer.length; c += LANES) {
+			ShortVector us = (ShortVector) ByteVector.fromArray(BYTE, buffer, uRow + c / 2).convertShape(VectorOperators.ZERO_EXTEND_B2S, PAIRS, 0);
+			ShortVector vs = (ShortVector) ByteVector.fromArray(BYTE, buffer, vRow + c / 2).convertShape(VectorOperators.ZERO_EXTEND_B2S, PAIRS, 0);
+			IntVector cu = ((IntVector) us.mul((short) 0x101).reinterpretAsBytes().convertShape(VectorOperators.ZERO_EXTEND_B2I, INT, 0)).sub(128);
+			IntVector cv = ((IntVector) vs.mul((short) 0x101).reinterpretAsBytes().convertShape(VectorOperators.ZERO_EXTEND_B2I, INT, 0)).sub(128);
+			IntVector cr = cv.mul(yuv.crMul);
+			IntVector cg = cu.mul(yuv.cguMul).add(cv.mul(yuv.cgvMul));
+			IntVector cb = cu.mul(yuv.cbMul);
+			for (int k = 0; k < 2; k++) {
+				int i = (k == 0 ? row0 : row1) + c;
+				if (i < c) break;
+				IntVector y = ((IntVector) ByteVector.fromArray(BYTE, buffer, i).convertShape(VectorOperators.ZERO_EXTEND_B2I, INT, 0))
+						.sub(yuv.yOffset).mul(yuv.yMul).add(1 << (YuvTable.SHIFT - 1));
+				IntVector b = y.add(cb).lanewise(VectorOperators.ASHR, YuvTable.SHIFT).max(0).min(255);
+				IntVector g = y.sub(cg).lanewise(VectorOperators.ASHR, YuvTable.SHIFT).max(0).min(255);
+				IntVector r = y.add(cr).lanewise(VectorOperators.ASHR, YuvTable.SHIFT).max(0).min(255);
+				b.or(g.lanewise(VectorOperators.LSHL, 8)).or(r.lanewise(VectorOperators.LSHL, 16)).or(0xFF000000)
+						.intoMemorySegment(dest, i * 4L, ByteOrder.nativeOrder());
 			}
 		}
+		return c;
 	}
 	
+	//same as convert420() for semi planar 4:2:0 data, u and v are interleaved starting at uvRow, at byte uPos and vPos of each pair
+	static int convert420Interleaved(byte[] buffer, MemorySegment dest, int w, int row0, int row1, int uvRow, int uPos, int vPos, YuvTable yuv) {
+		int c = 0;
+		for (; c + LANES <= w && uvRow + c + BYTE.length() <= buffer.length; c += LANES) {
+			ShortVector uv = ByteVector.fromArray(BYTE, buffer, uvRow + c).reinterpretAsShorts();
+			ShortVector us = uv.lanewise(VectorOperators.LSHR, uPos * 8).and((short) 0xFF);
+			ShortVector vs = uv.lanewise(VectorOperators.LSHR, vPos * 8).and((short) 0xFF);
+			IntVector cu = ((IntVector) us.mul((short) 0x101).reinterpretAsBytes().convertShape(VectorOperators.ZERO_EXTEND_B2I, INT, 0)).sub(128);
+			IntVector cv = ((IntVector) vs.mul((short) 0x101).reinterpretAsBytes().convertShape(VectorOperators.ZERO_EXTEND_B2I, INT, 0)).sub(128);
+			IntVector cr = cv.mul(yuv.crMul);
+			IntVector cg = cu.mul(yuv.cguMul).add(cv.mul(yuv.cgvMul));
+			IntVector cb = cu.mul(yuv.cbMul);
+			for (int k = 0; k < 2; k++) {
+				int i = (k == 0 ? row0 : row1) + c;
+				if (i < c) break;
+				IntVector y = ((IntVector) ByteVector.fromArray(BYTE, buffer, i).convertShape(VectorOperators.ZERO_EXTEND_B2I, INT, 0))
+						.sub(yuv.yOffset).mul(yuv.yMul).add(1 << (YuvTable.SHIFT - 1));
+				IntVector b = y.add(cb).lanewise(VectorOperators.ASHR, YuvTable.SHIFT).max(0).min(255);
+				IntVector g = y.sub(cg).lanewise(VectorOperators.ASHR, YuvTable.SHIFT).max(0).min(255);
+				IntVector r = y.add(cr).lanewise(VectorOperators.ASHR, YuvTable.SHIFT).max(0).min(255);
+				b.or(g.lanewise(VectorOperators.LSHL, 8)).or(r.lanewise(VectorOperators.LSHL, 16)).or(0xFF000000)
+						.intoMemorySegment(dest, i * 4L, ByteOrder.nativeOrder());
+			}
+		}
+		return c;
+	}
+	
+	//reorder packed 24 bit pixels into bgra bytes, which are argb ints in little endian order
+	//returns the first pixel that was not converted
+	static int shuffleRgb(byte[] buffer, IntBuffer dest, int i0, int i1, VectorShuffle<Byte> shuffle) {
+		MemorySegment out = MemorySegment.ofBuffer(dest);
+		VectorMask<Byte> alpha = VectorMask.fromLong(BGRA, 0x8888_8888_8888_8888L);
+		int i = i0;
+		for (; i + LANES <= i1 && i * 3 + BGRA.length() <= buffer.length; i += LANES) {
+			ByteVector.fromArray(BGRA, buffer, i * 3).rearrange(shuffle).blend((byte) -1, alpha).intoMemorySegment(out, i * 4L, ByteOrder.nativeOrder());
+		}
+		return i;
+	}
+	
+	//swap selects rgb input, otherwise bgr input
+	static VectorShuffle<Byte> rgbShuffle(boolean swap) {
+		return VectorShuffle.fromOp(BGRA, k -> {
+			int c = k % 4;
+			return c == 3 ? 0 : k / 4 * 3 + (swap ? 2 - c : c);
+		});
+	}
+}
+
+class FormatConverterYVector extends FormatConverterY {
+	
+	@Override
+	public void convertRows(int w, int h, byte[] buffer, IntBuffer dest, int r0, int r1, YuvTable yuv) {
+		if (VectorKernels.isStorable(dest) == false) {
+			super.convertRows(w, h, buffer, dest, r0, r1, yuv);
+			return;
+		}
+		int i = r0 * w, i1 = r1 * w;
+		MemorySegment out = MemorySegment.ofBuffer(dest);
+		IntVector zero = IntVector.zero(VectorKernels.INT);
+		for (; i + VectorKernels.LANES <= i1; i += VectorKernels.LANES) {
+			VectorKernels.put(VectorKernels.luma(VectorKernels.load(buffer, i), yuv), zero, zero, zero, out, i);
+		}
+		convertPixels(w, h, buffer, dest, i, i1, yuv);
+	}
+}
+
+class FormatConverterYUV444Vector extends FormatConverterYUV444 {
+	
+	@Override
+	public void convertRows(int w, int h, byte[] buffer, IntBuffer dest, int r0, int r1, YuvTable yuv) {
+		if (VectorKernels.isStorable(dest) == false) {
+			super.convertRows(w, h, buffer, dest, r0, r1, yuv);
+			return;
+		}
+		int i = r0 * w, i1 = r1 * w;
+		int plane = w * h;
+		MemorySegment out = MemorySegment.ofBuffer(dest);
+		for (; i + VectorKernels.LANES <= i1; i += VectorKernels.LANES) {
+			IntVector y = VectorKernels.load(buffer, i);
+			IntVector u = VectorKernels.load(buffer, i + plane);
+			IntVector v = VectorKernels.load(buffer, i + 2 * plane);
+			VectorKernels.put(y, u, v, out, i, yuv);
+		}
+		convertPixels(w, h, buffer, dest, i, i1, yuv);
+	}
+}
+
+class FormatConverterYUV420Vector extends FormatConverterYUV420 {
+	
+	@Override
+	public void convertRows(int w, int h, byte[] buffer, IntBuffer dest, int r0, int r1, YuvTable yuv) {
+		if (VectorKernels.isStorable(dest) == false) {
+			super.convertRows(w, h, buffer, dest, r0, r1, yuv);
+			return;
+		}
+		MemorySegment out = MemorySegment.ofBuffer(dest);
+		for (int r = r0; r < r1; r += 2) {
+			int row0 = r * w;
+			int row1 = r + 1 < r1 ? row0 + w : -1;
+			int uRow = h * w + (r / 2) * w / 2;
+			int vRow = uRow + h * w / 4;
+			int c = VectorKernels.convert420(buffer, out, w, row0, row1, uRow, vRow, yuv);
+			convertBlocks(w, h, buffer, dest, r, r1, c, yuv);
+		}
+	}
+}
+
+//vector kernel shared by NV12 and NV21
+class SemiPlanarVectorKernel {
+	
+	private final int uPos, vPos;
+	
+	SemiPlanarVectorKernel(int uPos, int vPos) {
+		this.uPos = uPos;
+		this.vPos = vPos;
+	}
+	
+	//convert the pair of rows starting at r, returns the first column that was not converted
+	int convertBlocks(int w, int h, byte[] buffer, MemorySegment dest, int r, int r1, YuvTable yuv) {
+		int row0 = r * w;
+		int row1 = r + 1 < r1 ? row0 + w : -1;
+		int uvRow = h * w + (r / 2) * w;
+		return VectorKernels.convert420Interleaved(buffer, dest, w, row0, row1, uvRow, uPos, vPos, yuv);
+	}
+}
+
+class FormatConverterNV12Vector extends FormatConverterNV12 {
+	
+	private final SemiPlanarVectorKernel kernel = new SemiPlanarVectorKernel(uPos, vPos);
+	
+	@Override
+	public void convertRows(int w, int h, byte[] buffer, IntBuffer dest, int r0, int r1, YuvTable yuv) {
+		if (VectorKernels.isStorable(dest) == false) {
+			super.convertRows(w, h, buffer, dest, r0, r1, yuv);
+			return;
+		}
+		MemorySegment out = MemorySegment.ofBuffer(dest);
+		for (int r = r0; r < r1; r += 2) {
+			int c = kernel.convertBlocks(w, h, buffer, out, r, r1, yuv);
+			convertBlocks(w, h, buffer, dest, r, r1, c, yuv);
+		}
+	}
+}
+
+class FormatConverterNV21Vector extends FormatConverterNV21 {
+	
+	private final SemiPlanarVectorKernel kernel = new SemiPlanarVectorKernel(uPos, vPos);
+	
+	@Override
+	public void convertRows(int w, int h, byte[] buffer, IntBuffer dest, int r0, int r1, YuvTable yuv) {
+		if (VectorKernels.isStorable(dest) == false) {
+			super.convertRows(w, h, buffer, dest, r0, r1, yuv);
+			return;
+		}
+		MemorySegment out = MemorySegment.ofBuffer(dest);
+		for (int r = r0; r < r1; r += 2) {
+			int c = kernel.convertBlocks(w, h, buffer, out, r, r1, yuv);
+			convertBlocks(w, h, buffer, dest, r, r1, c, yuv);
+		}
+	}
+}
+
+class FormatConverterRGB24Vector extends FormatConverterRGB24 {
+	
+	private static final VectorShuffle<Byte> SHUFFLE = VectorKernels.rgbShuffle(true);
+	
 	@Override
-	public int frameSize(int w, int h) {
-		return w * h * 3 / 2;
+	public void convertRows(int w, int h, byte[] buffer, IntBuffer dest, int r0, int r1, YuvTable yuv) {
+		if (VectorKernels.isStorable(dest) == false) {
+			super.convertRows(w, h, buffer, dest, r0, r1, yuv);
+			return;
+		}
+		int i = VectorKernels.shuffleRgb(buffer, dest, r0 * w, r1 * w, SHUFFLE);
+		convertPixels(buffer, dest, i, r1 * w);
 	}
+}
+
+class FormatConverterBGR24Vector extends FormatConverterBGR24 {
 	
+	private static final VectorShuffle<Byte> SHUFFLE = VectorKernels.rgbShuffle(false);
+	
+	@Override
+	public void convertRows(int w, int h, byte[] buffer, IntBuffer dest, int r0, int r1, YuvTable yuv) {
+		if (VectorKernels.isStorable(dest) == false) {
+			super.convertRows(w, h, buffer, dest, r0, r1, yuv);
+			return;
+		}
+		int i = VectorKernels.shuffleRgb(buffer, dest, r0 * w, r1 * w, SHUFFLE);
+		convertPixels(buffer, dest, i, r1 * w);
+	}
 }
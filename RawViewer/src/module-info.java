@@ -1,7 +1,13 @@
 module RawViewer {
 	requires java.prefs;
+	requires jdk.management;
+	requires jdk.jfr;
 	requires transitive javafx.controls;
 	requires javafx.graphics;
+	requires static jdk.incubator.vector;
 	
 	exports application;
+	
+	uses application.RawViewer.FormatProvider;
+	provides application.RawViewer.FormatProvider with application.RawViewer.StandardFormats;
 }
\ No newline at end of file